@@ -0,0 +1,100 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.BeliefCodec;
+import model.ForwardFilter;
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Encode and decode latency of the BeliefCodec formats on the beliefs of a simulated
+ * run, from the uniform start to a converged filter. The setup prints the mean size of
+ * an encoded snapshot against the raw doubles and the largest L1 error of a round trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeliefCodecBenchmark {
+
+	private static final int NUM_BELIEFS = 64;
+
+	@Param({ "16", "64", "200" })
+	public int size;
+
+	@Param({ "SPARSE", "QUADTREE" })
+	public BeliefCodec.Format format;
+
+	@Param({ "8", "16" })
+	public int bits;
+
+	private BeliefCodec codec;
+	private double[][] beliefs;
+	private byte[][] encoded;
+	private double[] decoded;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		TransitionModel transitionModel = new TransitionModel(size, size, 4);
+		SensorModel sensorModel = new SensorModel(size, size);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(42));
+		ForwardFilter filter = new ForwardFilter(transitionModel, sensorModel);
+
+		beliefs = new double[NUM_BELIEFS][];
+		for (int t = 0; t < NUM_BELIEFS; t++) {
+			simulator.step();
+			filter.step(simulator.getReading());
+			beliefs[t] = filter.getFVector().clone();
+		}
+
+		codec = new BeliefCodec(transitionModel, format, bits);
+		encoded = new byte[NUM_BELIEFS][];
+		decoded = new double[transitionModel.getNumStates()];
+
+		long totalBytes = 0;
+		double maxError = 0.0;
+		for (int t = 0; t < NUM_BELIEFS; t++) {
+			encoded[t] = codec.encode(beliefs[t]);
+			totalBytes += encoded[t].length;
+
+			codec.decode(encoded[t], decoded);
+			double error = 0.0;
+			for (int i = 0; i < decoded.length; i++) {
+				error += Math.abs(decoded[i] - beliefs[t][i]);
+			}
+			maxError = Math.max(maxError, error);
+		}
+		System.out.println(String.format("%n%s %d bit: %.0f bytes per snapshot (raw %d), max L1 error %.3g", format,
+				bits, (double) totalBytes / NUM_BELIEFS, 8 * decoded.length, maxError));
+	}
+
+	@Benchmark
+	public byte[] encode() {
+		return codec.encode(beliefs[next++ & (NUM_BELIEFS - 1)]);
+	}
+
+	@Benchmark
+	public double[] decode() {
+		codec.decode(encoded[next++ & (NUM_BELIEFS - 1)], decoded);
+		return decoded;
+	}
+
+}
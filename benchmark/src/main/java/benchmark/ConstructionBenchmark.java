@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.GridMap;
+import model.HMMLocalizer;
+import model.ModelCache;
+
+/*
+ * Cost of building the transition and sensor models for a size x size grid, versus
+ * loading them from a ModelCache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructionBenchmark {
+
+	@Param({ "4", "16", "64", "128", "200" })
+	public int size;
+
+	private File cacheDirectory;
+	private ModelCache cache;
+	private GridMap map;
+
+	@Setup
+	public void setUp() throws IOException {
+		cacheDirectory = Files.createTempDirectory("model-cache").toFile();
+		cache = new ModelCache(cacheDirectory);
+		map = GridMap.empty(size, size);
+		cache.load(map, 4);
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (File file : cacheDirectory.listFiles()) {
+			file.delete();
+		}
+		cacheDirectory.delete();
+	}
+
+	@Benchmark
+	public HMMLocalizer construct() {
+		return new HMMLocalizer(size, size, 4);
+	}
+
+	@Benchmark
+	public HMMLocalizer loadCached() throws IOException {
+		ModelCache.Models models = cache.load(map, 4);
+		return new HMMLocalizer(models.transitionModel, models.sensorModel);
+	}
+
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.FloatForwardFilter;
+import model.ForwardFilter;
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Step throughput of the double precision ForwardFilter against the single precision
+ * FloatForwardFilter on the same recorded readings. The setup prints how far the two
+ * beliefs drift apart over the recording.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloatFilterBenchmark {
+
+	private static final int NUM_READINGS = 1024;
+
+	@Param({ "16", "64", "200" })
+	public int size;
+
+	private ForwardFilter doubleFilter;
+	private FloatForwardFilter floatFilter;
+	private int[] readings;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		TransitionModel transitionModel = new TransitionModel(size, size, 4);
+		SensorModel sensorModel = new SensorModel(size, size);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(42));
+
+		readings = new int[NUM_READINGS];
+		for (int t = 0; t < NUM_READINGS; t++) {
+			simulator.step();
+			readings[t] = simulator.getReading();
+		}
+
+		doubleFilter = new ForwardFilter(transitionModel, sensorModel);
+		floatFilter = new FloatForwardFilter(transitionModel, sensorModel);
+
+		double maxError = 0.0;
+		int argmaxMismatches = 0;
+		for (int t = 0; t < NUM_READINGS; t++) {
+			doubleFilter.step(readings[t]);
+			floatFilter.step(readings[t]);
+
+			double[] expected = doubleFilter.getFVector();
+			float[] actual = floatFilter.getFVector();
+			int expectedArgmax = 0, actualArgmax = 0;
+			for (int i = 0; i < expected.length; i++) {
+				maxError = Math.max(maxError, Math.abs(expected[i] - actual[i]));
+				if (expected[i] > expected[expectedArgmax])
+					expectedArgmax = i;
+				if (actual[i] > actual[actualArgmax])
+					actualArgmax = i;
+			}
+			if (expectedArgmax != actualArgmax)
+				argmaxMismatches++;
+		}
+		System.out.println(String.format("%nfloat vs double over %d steps: max abs error %.3g, argmax mismatches %d",
+				NUM_READINGS, maxError, argmaxMismatches));
+	}
+
+	@Benchmark
+	public void doubleStep() {
+		doubleFilter.step(readings[next++ & (NUM_READINGS - 1)]);
+	}
+
+	@Benchmark
+	public void floatStep() {
+		floatFilter.step(readings[next++ & (NUM_READINGS - 1)]);
+	}
+
+}
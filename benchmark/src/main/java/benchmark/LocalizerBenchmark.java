@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.HMMLocalizer;
+
+/*
+ * Per step cost of a running localizer on a size x size grid: one update(), reading
+ * the whole position marginal the way the viewer does, and finding the most likely
+ * position. transitionView queries the transition probabilities from one pose to all
+ * poses, like one click on "Show transitions". Run with -prof gc to get the
+ * allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizerBenchmark {
+
+	@Param({ "4", "16", "64", "128", "200" })
+	public int size;
+
+	private HMMLocalizer localizer;
+
+	@Setup
+	public void setUp() {
+		localizer = new HMMLocalizer(size, size, 4);
+		for (int i = 0; i < 100; i++) {
+			localizer.update();
+		}
+	}
+
+	@Benchmark
+	public void update() {
+		localizer.update();
+	}
+
+	@Benchmark
+	public void currentProb(Blackhole blackhole) {
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				blackhole.consume(localizer.getCurrentProb(row, col));
+			}
+		}
+	}
+
+	@Benchmark
+	public void transitionView(Blackhole blackhole) {
+		int fromRow = size / 2;
+		int fromCol = size / 2;
+		for (int row = 0; row < size; row++) {
+			for (int col = 0; col < size; col++) {
+				for (int head = 0; head < 4; head++) {
+					blackhole.consume(localizer.getTProb(fromRow, fromCol, 0, row, col, head));
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	public int prediction() {
+		return localizer.getPredictionRow() * size + localizer.getPredictionCol();
+	}
+
+}
@@ -0,0 +1,51 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Steps per second of the RobotSimulator on a size x size grid, i.e. how fast
+ * synthetic readings can be generated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmark {
+
+	@Param({ "4", "64", "200" })
+	public int size;
+
+	private RobotSimulator simulator;
+
+	@Setup
+	public void setUp() {
+		simulator = new RobotSimulator(new TransitionModel(size, size, 4), new SensorModel(size, size),
+				new SplittableRandom(42));
+	}
+
+	@Benchmark
+	public int step() {
+		simulator.step();
+		return simulator.getReading();
+	}
+
+}
@@ -0,0 +1,77 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.ForwardFilter;
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Step throughput of the dense ForwardFilter against the sparse one (epsilon 1e-9, a
+ * full pass every 100 steps) on the same recorded readings, both converged on the
+ * robot before measuring.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseFilterBenchmark {
+
+	private static final int NUM_READINGS = 1024;
+
+	@Param({ "64", "200", "500" })
+	public int size;
+
+	private ForwardFilter denseFilter;
+	private ForwardFilter sparseFilter;
+	private int[] readings;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		TransitionModel transitionModel = new TransitionModel(size, size, 4);
+		SensorModel sensorModel = new SensorModel(size, size);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(42));
+
+		readings = new int[NUM_READINGS];
+		for (int t = 0; t < NUM_READINGS; t++) {
+			simulator.step();
+			readings[t] = simulator.getReading();
+		}
+
+		denseFilter = new ForwardFilter(transitionModel, sensorModel);
+		sparseFilter = new ForwardFilter(transitionModel, sensorModel);
+		sparseFilter.setSparse(1e-9, 100);
+		for (int t = 0; t < NUM_READINGS; t++) {
+			denseFilter.step(readings[t]);
+			sparseFilter.step(readings[t]);
+		}
+	}
+
+	@Benchmark
+	public void denseStep() {
+		denseFilter.step(readings[next++ & (NUM_READINGS - 1)]);
+	}
+
+	@Benchmark
+	public void sparseStep() {
+		sparseFilter.step(readings[next++ & (NUM_READINGS - 1)]);
+	}
+
+}
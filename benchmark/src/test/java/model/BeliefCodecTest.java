@@ -0,0 +1,166 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * BeliefCodec round trips for both formats and quantizations on a map with obstacles,
+ * and rejects truncated, corrupt and foreign data with an IllegalArgumentException.
+ */
+public class BeliefCodecTest {
+
+	private static final int HEADS = 4;
+
+	private final TransitionModel transitionModel = new TransitionModel(obstacleMap(20, 23), HEADS);
+	private final SensorModel sensorModel = new SensorModel(20, 23);
+
+	// a wall with a door and a block of pillars
+	private static GridMap obstacleMap(int rows, int cols) {
+		boolean[] occupied = new boolean[rows * cols];
+		for (int row = 0; row < rows; row++) {
+			if (row != 4)
+				occupied[row * cols + cols / 3] = true;
+		}
+		for (int row = 10; row < 16; row += 2) {
+			for (int col = 12; col < 20; col += 3) {
+				occupied[row * cols + col] = true;
+			}
+		}
+		return new GridMap(rows, cols, occupied);
+	}
+
+	// a localized belief after a few readings and a spread out one after a single reading
+	private double[][] getBeliefs() {
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(9));
+		ForwardFilter filter = new ForwardFilter(transitionModel, sensorModel);
+		simulator.step();
+		filter.step(simulator.getReading());
+		double[] spread = filter.getFVector().clone();
+		for (int t = 0; t < 30; t++) {
+			simulator.step();
+			filter.step(simulator.getReading());
+		}
+		return new double[][] { spread, filter.getFVector().clone() };
+	}
+
+	@Test
+	public void roundTrip() {
+		for (BeliefCodec.Format format : BeliefCodec.Format.values()) {
+			for (int bits : new int[] { 8, 16 }) {
+				BeliefCodec codec = new BeliefCodec(transitionModel, format, bits);
+				for (double[] belief : getBeliefs()) {
+					double[] decoded = new double[belief.length];
+					codec.decode(codec.encode(belief), decoded);
+
+					// each state is off by at most a threshold or half a quantization step before renormalizing
+					double sum = 0.0, distance = 0.0;
+					int best = 0, decodedBest = 0;
+					for (int i = 0; i < belief.length; i++) {
+						sum += decoded[i];
+						distance += Math.abs(belief[i] - decoded[i]);
+						if (belief[i] > belief[best])
+							best = i;
+						if (decoded[i] > decoded[decodedBest])
+							decodedBest = i;
+					}
+					String name = format + " " + bits + " bit";
+					assertEquals(1.0, sum, 1e-9, name);
+					double maxError = belief[best] * (BeliefCodec.DEFAULT_THRESHOLD + 0.5 / ((1 << bits) - 1));
+					assertTrue(distance <= 2 * belief.length * maxError, name + ": L1 distance " + distance);
+					// the largest probability is stored exactly, so the most likely state stays on top
+					assertEquals(decoded[decodedBest], decoded[best], name);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void rejectsTruncatedData() {
+		for (BeliefCodec.Format format : BeliefCodec.Format.values()) {
+			BeliefCodec codec = new BeliefCodec(transitionModel, format, 16);
+			byte[] data = codec.encode(getBeliefs()[1]);
+			double[] decoded = new double[transitionModel.getNumStates()];
+			for (int length = 0; length < data.length; length++) {
+				final byte[] truncated = Arrays.copyOf(data, length);
+				assertThrows(IllegalArgumentException.class, () -> codec.decode(truncated, decoded),
+						format + " cut to " + length + " bytes");
+			}
+		}
+	}
+
+	@Test
+	public void corruptDataThrowsOnlyIllegalArgument() {
+		SplittableRandom random = new SplittableRandom(13);
+		double[] decoded = new double[transitionModel.getNumStates()];
+		for (BeliefCodec.Format format : BeliefCodec.Format.values()) {
+			for (int bits : new int[] { 8, 16 }) {
+				BeliefCodec codec = new BeliefCodec(transitionModel, format, bits);
+				for (double[] belief : getBeliefs()) {
+					byte[] data = codec.encode(belief);
+					for (int trial = 0; trial < 500; trial++) {
+						byte[] corrupt = data.clone();
+						// leave the header alone, it is checked field by field
+						int numFlips = 1 + random.nextInt(4);
+						for (int k = 0; k < numFlips; k++) {
+							corrupt[19 + random.nextInt(corrupt.length - 19)] ^= (byte) (1 + random.nextInt(255));
+						}
+						try {
+							codec.decode(corrupt, decoded);
+						} catch (IllegalArgumentException e) {
+							// rejected, as it should be
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void rejectsSparseGapPastLastState() {
+		BeliefCodec codec = new BeliefCodec(transitionModel, BeliefCodec.Format.SPARSE, 8);
+		byte[] header = Arrays.copyOf(codec.encode(getBeliefs()[1]), 19);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(header, 0, header.length);
+		writeVarint(out, 1);
+		writeVarint(out, transitionModel.getNumStates());
+		out.write(255);
+		final byte[] data = out.toByteArray();
+		assertThrows(IllegalArgumentException.class,
+				() -> codec.decode(data, new double[transitionModel.getNumStates()]));
+	}
+
+	@Test
+	public void rejectsBeliefForAnotherMap() {
+		// same number of states, different shape
+		TransitionModel square = new TransitionModel(20, 20, HEADS);
+		TransitionModel wide = new TransitionModel(10, 40, HEADS);
+		assertEquals(square.getNumStates(), wide.getNumStates());
+
+		for (BeliefCodec.Format format : BeliefCodec.Format.values()) {
+			ForwardFilter filter = new ForwardFilter(square, new SensorModel(20, 20));
+			filter.step(new SensorModel(20, 20).getReadingIndex(3, 17));
+			final byte[] data = new BeliefCodec(square, format, 8).encode(filter.getFVector());
+			final BeliefCodec codec = new BeliefCodec(wide, format, 8);
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+					() -> codec.decode(data, new double[wide.getNumStates()]));
+			assertTrue(e.getMessage().contains("different map"), e.getMessage());
+		}
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+}
@@ -0,0 +1,78 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * update() and observe() must not allocate once the localizer is warmed up, so long
+ * runs do not churn the GC. Measured with the per thread allocation counter of the
+ * HotSpot ThreadMXBean.
+ */
+public class HMMLocalizerAllocationTest {
+
+	private static final int WARMUP_STEPS = 20000;
+	private static final int STEPS = 10000;
+
+	private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	@Test
+	public void updateDoesNotAllocate() {
+		HMMLocalizer localizer = new HMMLocalizer(20, 30, 4);
+		assertEquals(0L, measure(localizer, true));
+	}
+
+	@Test
+	public void observeDoesNotAllocate() {
+		HMMLocalizer localizer = new HMMLocalizer(20, 30, 4);
+		assertEquals(0L, measure(localizer, false));
+	}
+
+	@Test
+	public void sparseObserveDoesNotAllocate() {
+		HMMLocalizer localizer = new HMMLocalizer(20, 30, 4);
+		localizer.setSparse(1e-6, 50);
+		assertEquals(0L, measure(localizer, false));
+	}
+
+	// bytes allocated by STEPS warmed up steps, less the cost of reading the counter
+	private long measure(HMMLocalizer localizer, boolean update) {
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		int[] readings = new int[STEPS];
+		RobotSimulator simulator = new RobotSimulator(localizer.getTransitionModel(), localizer.getSensorModel(),
+				new SplittableRandom(1));
+		for (int t = 0; t < STEPS; t++) {
+			simulator.step();
+			readings[t] = simulator.getReading();
+		}
+
+		for (int t = 0; t < WARMUP_STEPS; t++) {
+			step(localizer, update, readings[t % STEPS]);
+		}
+
+		long overhead = threads.getThreadAllocatedBytes(thread);
+		overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+
+		long start = threads.getThreadAllocatedBytes(thread);
+		for (int t = 0; t < STEPS; t++) {
+			step(localizer, update, readings[t]);
+		}
+		return threads.getThreadAllocatedBytes(thread) - start - overhead;
+	}
+
+	private static void step(HMMLocalizer localizer, boolean update, int reading) {
+		if (update)
+			localizer.update();
+		else
+			localizer.observe(reading);
+	}
+
+}
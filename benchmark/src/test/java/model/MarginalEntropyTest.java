@@ -0,0 +1,45 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * ForwardFilter.getMarginalEntropy() equals the entropy of the whole marginal, also
+ * in sparse mode, where it only looks at the tracked states.
+ */
+public class MarginalEntropyTest {
+
+	@Test
+	public void denseEntropyMatchesMarginal() {
+		assertMatchesMarginal(0.0);
+	}
+
+	@Test
+	public void sparseEntropyMatchesMarginal() {
+		assertMatchesMarginal(1e-9);
+	}
+
+	private static void assertMatchesMarginal(double epsilon) {
+		TransitionModel transitionModel = new TransitionModel(40, 40, 4);
+		SensorModel sensorModel = new SensorModel(40, 40);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(1));
+		ForwardFilter filter = new ForwardFilter(transitionModel, sensorModel);
+		filter.setSparse(epsilon, 50);
+
+		for (int t = 0; t < 300; t++) {
+			simulator.step();
+			filter.step(simulator.getReading());
+
+			double entropy = 0.0;
+			for (double prob : filter.getMarginal()) {
+				if (prob > 0.0)
+					entropy -= prob * Math.log(prob);
+			}
+			assertEquals(entropy / Math.log(2.0), filter.getMarginalEntropy(), 1e-12);
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * ParticleLocalizer records the entropy of its particle histogram, in bits like
+ * HMMLocalizer, in its metrics and snapshots.
+ */
+public class ParticleEntropyTest {
+
+	@Test
+	public void recordsHistogramEntropy() {
+		int size = 20;
+		TransitionModel transitionModel = new TransitionModel(size, size, 4);
+		SensorModel sensorModel = new SensorModel(size, size);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(1));
+		ParticleLocalizer localizer = new ParticleLocalizer(transitionModel, sensorModel, 2000, new SplittableRandom(2));
+		localizer.setSnapshotPublishing(true);
+
+		double entropySum = 0.0;
+		for (int t = 0; t < 100; t++) {
+			simulator.step();
+			localizer.observe(simulator.getReading());
+
+			double entropy = 0.0;
+			for (int row = 0; row < size; row++) {
+				for (int col = 0; col < size; col++) {
+					double prob = localizer.getCurrentProb(row, col);
+					if (prob > 0.0)
+						entropy -= prob * Math.log(prob);
+				}
+			}
+			entropy /= Math.log(2.0);
+			entropySum += entropy;
+			assertEquals(entropy, localizer.getMetrics().getLastEntropy(), 1e-9);
+			assertEquals(entropy, localizer.getSnapshot().entropy, 1e-9);
+		}
+		assertTrue(entropySum > 0.0);
+	}
+
+}
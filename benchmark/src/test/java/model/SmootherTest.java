@@ -0,0 +1,142 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * ForwardBackwardSmoother and FixedLagSmoother agree with a naive forward-backward
+ * over dense matrices that keeps every forward message.
+ */
+public class SmootherTest {
+
+	private static final int ROWS = 6, COLS = 7, HEADS = 4, STEPS = 40;
+
+	@Test
+	public void forwardBackwardMatchesNaive() {
+		TransitionModel transitionModel = new TransitionModel(ROWS, COLS, HEADS);
+		SensorModel sensorModel = new SensorModel(ROWS, COLS);
+		int[] readings = simulate(transitionModel, sensorModel);
+		final double[][] expected = naiveSmooth(transitionModel, sensorModel, readings);
+
+		final int[] calls = new int[1];
+		new ForwardBackwardSmoother(transitionModel, sensorModel).smooth(readings,
+				new ForwardBackwardSmoother.Listener() {
+					@Override
+					public void onSmoothed(int t, double[] belief) {
+						assertArrayClose(expected[t], belief);
+						calls[0]++;
+					}
+				});
+		assertEquals(STEPS, calls[0]);
+	}
+
+	@Test
+	public void fixedLagMatchesNaive() {
+		TransitionModel transitionModel = new TransitionModel(ROWS, COLS, HEADS);
+		SensorModel sensorModel = new SensorModel(ROWS, COLS);
+		int[] readings = simulate(transitionModel, sensorModel);
+
+		for (int lag : new int[] { 0, 1, 5 }) {
+			FixedLagSmoother smoother = new FixedLagSmoother(transitionModel, sensorModel, lag);
+			for (int t = 0; t < STEPS; t++) {
+				boolean ready = smoother.step(readings[t]);
+				assertEquals(t >= lag, ready);
+				if (!ready)
+					continue;
+
+				// smoothing step t - lag with the readings up to t only
+				int[] prefix = new int[t + 1];
+				System.arraycopy(readings, 0, prefix, 0, t + 1);
+				double[][] expected = naiveSmooth(transitionModel, sensorModel, prefix);
+				assertEquals(t - lag, smoother.getSmoothedStep());
+				assertArrayClose(expected[t - lag], smoother.getSmoothed());
+			}
+		}
+	}
+
+	private static int[] simulate(TransitionModel transitionModel, SensorModel sensorModel) {
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(3));
+		int[] readings = new int[STEPS];
+		for (int t = 0; t < STEPS; t++) {
+			simulator.step();
+			readings[t] = simulator.getReading();
+		}
+		return readings;
+	}
+
+	// smoothed[t] for every step, from the full transition matrix and all forward messages
+	private static double[][] naiveSmooth(TransitionModel transitionModel, SensorModel sensorModel, int[] readings) {
+		GridMap map = transitionModel.getGridMap();
+		int numStates = transitionModel.getNumStates();
+		double[][] transitions = new double[numStates][numStates];
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < numStates; j++) {
+				transitions[i][j] = transitionModel.getProb(i, j);
+			}
+		}
+
+		int numSteps = readings.length;
+		double[][] forward = new double[numSteps + 1][numStates];
+		for (int i = 0; i < numStates; i++) {
+			forward[0][i] = 1.0 / numStates;
+		}
+		for (int t = 0; t < numSteps; t++) {
+			for (int j = 0; j < numStates; j++) {
+				double prob = 0.0;
+				for (int i = 0; i < numStates; i++) {
+					prob += forward[t][i] * transitions[i][j];
+				}
+				int cell = j / HEADS;
+				forward[t + 1][j] = prob * sensorModel.getProb(readings[t], map.getRow(cell), map.getCol(cell));
+			}
+			normalize(forward[t + 1]);
+		}
+
+		double[][] smoothed = new double[numSteps][numStates];
+		double[] backward = new double[numStates];
+		for (int i = 0; i < numStates; i++) {
+			backward[i] = 1.0;
+		}
+		for (int t = numSteps - 1; t >= 0; t--) {
+			for (int i = 0; i < numStates; i++) {
+				smoothed[t][i] = forward[t + 1][i] * backward[i];
+			}
+			normalize(smoothed[t]);
+
+			double[] previous = new double[numStates];
+			for (int i = 0; i < numStates; i++) {
+				for (int j = 0; j < numStates; j++) {
+					int cell = j / HEADS;
+					previous[i] += transitions[i][j]
+							* sensorModel.getProb(readings[t], map.getRow(cell), map.getCol(cell)) * backward[j];
+				}
+			}
+			normalize(previous);
+			backward = previous;
+		}
+		return smoothed;
+	}
+
+	private static void normalize(double[] vector) {
+		double sum = 0.0;
+		for (double value : vector) {
+			sum += value;
+		}
+		assertTrue(sum > 0.0);
+		for (int i = 0; i < vector.length; i++) {
+			vector[i] /= sum;
+		}
+	}
+
+	private static void assertArrayClose(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 1e-12);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * A localizer fed only through observe() publishes snapshots without a true pose
+ * instead of building a simulator to make one up.
+ */
+public class SnapshotTest {
+
+	@Test
+	public void observedLocalizerHasNoTruePose() {
+		HMMLocalizer localizer = new HMMLocalizer(10, 10, 4);
+		localizer.setSnapshotPublishing(true);
+		localizer.observe(localizer.getSensorModel().getReadingIndex(3, 4));
+
+		BeliefSnapshot snapshot = localizer.getSnapshot();
+		assertEquals(1, snapshot.version);
+		assertEquals(-1, snapshot.trueRow);
+		assertEquals(-1, snapshot.trueCol);
+		assertEquals(-1, snapshot.trueHeading);
+		assertEquals(3, snapshot.readingRow);
+		assertEquals(4, snapshot.readingCol);
+	}
+
+	@Test
+	public void observedParticleLocalizerHasNoTruePose() {
+		ParticleLocalizer localizer = new ParticleLocalizer(new TransitionModel(10, 10, 4), new SensorModel(10, 10),
+				500, new SplittableRandom(4));
+		localizer.setSnapshotPublishing(true);
+		localizer.observe(new SensorModel(10, 10).getReadingIndex(3, 4));
+
+		BeliefSnapshot snapshot = localizer.getSnapshot();
+		assertEquals(-1, snapshot.trueRow);
+		assertEquals(-1, snapshot.trueCol);
+		assertEquals(-1, snapshot.trueHeading);
+	}
+
+	@Test
+	public void simulatedLocalizerHasTruePose() {
+		HMMLocalizer localizer = new HMMLocalizer(10, 10, 4);
+		localizer.setSnapshotPublishing(true);
+		localizer.update();
+
+		BeliefSnapshot snapshot = localizer.getSnapshot();
+		int[] trueState = localizer.getCurrentTrueState();
+		assertEquals(trueState[0], snapshot.trueRow);
+		assertEquals(trueState[1], snapshot.trueCol);
+		assertEquals(trueState[2], snapshot.trueHeading);
+	}
+
+}
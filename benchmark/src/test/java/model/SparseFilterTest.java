@@ -0,0 +1,79 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The sparse ForwardFilter keeps close to the dense one while tracking a small part
+ * of the states, and finds a kidnapped robot again.
+ */
+public class SparseFilterTest {
+
+	private static final int SIZE = 100, HEADS = 4;
+
+	@Test
+	public void sparseFollowsDense() {
+		TransitionModel transitionModel = new TransitionModel(SIZE, SIZE, HEADS);
+		SensorModel sensorModel = new SensorModel(SIZE, SIZE);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(5));
+		ForwardFilter dense = new ForwardFilter(transitionModel, sensorModel);
+		ForwardFilter sparse = new ForwardFilter(transitionModel, sensorModel);
+		sparse.setSparse(1e-9, 100);
+
+		int numSteps = 1000, mismatches = 0;
+		long numActive = 0;
+		double maxDistance = 0.0;
+		for (int t = 0; t < numSteps; t++) {
+			simulator.step();
+			dense.step(simulator.getReading());
+			sparse.step(simulator.getReading());
+
+			if (dense.getPredictedCell() != sparse.getPredictedCell())
+				mismatches++;
+			numActive += sparse.getNumActive();
+			double distance = 0.0;
+			double[] expected = dense.getFVector(), actual = sparse.getFVector();
+			for (int i = 0; i < expected.length; i++) {
+				distance += Math.abs(expected[i] - actual[i]);
+			}
+			maxDistance = Math.max(maxDistance, distance);
+		}
+
+		assertTrue(mismatches <= numSteps / 100, mismatches + " predictions differ");
+		assertTrue(numActive / numSteps < transitionModel.getNumStates() / 100, numActive / numSteps + " states tracked");
+		assertTrue(maxDistance < 1e-4, "L1 distance " + maxDistance);
+	}
+
+	@Test
+	public void sparseFindsKidnappedRobot() {
+		TransitionModel transitionModel = new TransitionModel(SIZE, SIZE, HEADS);
+		SensorModel sensorModel = new SensorModel(SIZE, SIZE);
+		RobotSimulator before = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(6));
+		RobotSimulator after = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(7));
+		ForwardFilter sparse = new ForwardFilter(transitionModel, sensorModel);
+		sparse.setSparse(1e-9, 100);
+		GridMap map = transitionModel.getGridMap();
+
+		for (int t = 0; t < 300; t++) {
+			before.step();
+			sparse.step(before.getReading());
+		}
+		// the readings now come from a robot somewhere else on the map
+		int errorSum = 0, numSteps = 0;
+		for (int t = 0; t < 400; t++) {
+			after.step();
+			sparse.step(after.getReading());
+			if (t < 100)
+				continue;
+			int cell = sparse.getPredictedCell();
+			errorSum += Math.abs(map.getRow(cell) - after.getRow()) + Math.abs(map.getCol(cell) - after.getCol());
+			numSteps++;
+		}
+		double meanError = (double) errorSum / numSteps;
+		assertTrue(meanError < 3.0, "mean Manhattan error " + meanError);
+	}
+
+}
@@ -0,0 +1,151 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * A reading that no state of the current belief can explain restarts the filters and
+ * the Viterbi decoder from the uniform belief instead of turning the belief into NaN
+ * or leaving it at 0.
+ */
+public class UnexplainedReadingTest {
+
+	private static final int SIZE = 30;
+
+	private final TransitionModel transitionModel = new TransitionModel(SIZE, SIZE, 4);
+	private final SensorModel sensorModel = new SensorModel(SIZE, SIZE);
+
+	// localized near (0, 0), then a reading from the opposite corner
+	private int[] getReadings() {
+		int[] readings = new int[31];
+		for (int t = 0; t < 30; t++) {
+			readings[t] = sensorModel.getReadingIndex(0, t % 2);
+		}
+		readings[30] = sensorModel.getReadingIndex(SIZE - 1, SIZE - 1);
+		return readings;
+	}
+
+	@Test
+	public void denseFilterRestarts() {
+		assertRestarts(new ForwardFilter(transitionModel, sensorModel));
+	}
+
+	@Test
+	public void parallelFilterRestarts() {
+		ForwardFilter filter = new ForwardFilter(transitionModel, sensorModel);
+		filter.setParallelism(ForkJoinPool.commonPool(), 1);
+		assertRestarts(filter);
+	}
+
+	@Test
+	public void sparseFilterRestarts() {
+		ForwardFilter filter = new ForwardFilter(transitionModel, sensorModel);
+		filter.setSparse(1e-6, 1000);
+		assertRestarts(filter);
+	}
+
+	private void assertRestarts(ForwardFilter filter) {
+		for (int reading : getReadings()) {
+			filter.step(reading);
+		}
+		assertEquals(1.0, sum(filter.getFVector()), 1e-9);
+		assertEquals(transitionModel.getGridMap().getCell(SIZE - 1, SIZE - 1), filter.getPredictedCell());
+	}
+
+	@Test
+	public void floatFilterRestarts() {
+		FloatForwardFilter filter = new FloatForwardFilter(transitionModel, sensorModel);
+		for (int reading : getReadings()) {
+			filter.step(reading);
+		}
+		double sum = 0.0;
+		for (float prob : filter.getFVector()) {
+			sum += prob;
+		}
+		assertEquals(1.0, sum, 1e-5);
+	}
+
+	@Test
+	public void batchRestartsOnlyTheLostRobot() {
+		BatchLocalizer batch = new BatchLocalizer(transitionModel, sensorModel, 2);
+		int[] readings = getReadings();
+		int[] pair = new int[2];
+		for (int t = 0; t < readings.length; t++) {
+			pair[0] = readings[t];
+			pair[1] = sensorModel.getReadingIndex(5, 5);
+			batch.stepAll(pair);
+		}
+		for (int robot = 0; robot < 2; robot++) {
+			double sum = 0.0;
+			for (int i = 0; i < transitionModel.getNumStates(); i++) {
+				sum += batch.getProb(robot, i);
+			}
+			assertEquals(1.0, sum, 1e-9);
+		}
+		assertEquals(0.0, batch.getCurrentProb(1, SIZE - 1, SIZE - 1));
+	}
+
+	@Test
+	public void smootherStaysNormalized() {
+		int[] readings = new int[40];
+		for (int t = 0; t < readings.length; t++) {
+			readings[t] = t == 20 ? sensorModel.getReadingIndex(SIZE - 1, SIZE - 1) : sensorModel.getReadingIndex(0, t % 2);
+		}
+		new ForwardBackwardSmoother(transitionModel, sensorModel).smooth(readings,
+				new ForwardBackwardSmoother.Listener() {
+					@Override
+					public void onSmoothed(int t, double[] belief) {
+						assertEquals(1.0, sum(belief), 1e-9);
+					}
+				});
+	}
+
+	@Test
+	public void viterbiRestarts() {
+		ViterbiDecoder decoder = new ViterbiDecoder(transitionModel, sensorModel);
+		for (int reading : getReadings()) {
+			decoder.step(reading);
+		}
+		for (int t = 0; t < 10; t++) {
+			decoder.step(sensorModel.getReadingIndex(SIZE - 1, SIZE - 1));
+		}
+		GridMap map = transitionModel.getGridMap();
+		int cell = decoder.getMostLikelyState() / transitionModel.getNumHead();
+		assertTrue(map.getRow(cell) >= SIZE - 3 && map.getCol(cell) >= SIZE - 3,
+				"most likely cell " + map.getRow(cell) + ", " + map.getCol(cell));
+		assertEquals(getReadings().length + 10, decoder.getTrajectory().length);
+	}
+
+	@Test
+	public void observeRejectsIndexOutsideSensorModel() {
+		HMMLocalizer localizer = new HMMLocalizer(transitionModel, sensorModel);
+		ParticleLocalizer particles = new ParticleLocalizer(transitionModel, sensorModel, 1000, new SplittableRandom(2));
+		localizer.observe(sensorModel.getReadingIndex(4, 4));
+		particles.observe(sensorModel.getReadingIndex(4, 4));
+		double prob = localizer.getCurrentProb(4, 4);
+		double particleProb = particles.getCurrentProb(4, 4);
+
+		for (int reading : new int[] { -1, sensorModel.getNothingReading() + 1, Integer.MIN_VALUE }) {
+			assertThrows(IllegalArgumentException.class, () -> localizer.observe(reading));
+			assertThrows(IllegalArgumentException.class, () -> particles.observe(reading));
+		}
+		assertEquals(prob, localizer.getCurrentProb(4, 4));
+		assertEquals(particleProb, particles.getCurrentProb(4, 4));
+		assertEquals(1, localizer.getMetrics().getSnapshot().steps);
+	}
+
+	private static double sum(double[] belief) {
+		double sum = 0.0;
+		for (double prob : belief) {
+			sum += prob;
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,107 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The path of ViterbiDecoder is as likely as the best path of a brute-force log-space
+ * Viterbi over the dense transition matrix. Paths are compared by their probability
+ * rather than state by state, since equally likely paths may be broken either way.
+ */
+public class ViterbiDecoderTest {
+
+	private static final int HEADS = 4, STEPS = 30;
+
+	@Test
+	public void pathIsMostLikely() {
+		GridMap map = obstacleMap(8, 9);
+		TransitionModel transitionModel = new TransitionModel(map, HEADS);
+		SensorModel sensorModel = new SensorModel(map.getNumRows(), map.getNumCols());
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(11));
+		ViterbiDecoder decoder = new ViterbiDecoder(transitionModel, sensorModel);
+
+		int[] readings = new int[STEPS];
+		for (int t = 0; t < STEPS; t++) {
+			simulator.step();
+			readings[t] = simulator.getReading();
+			decoder.step(readings[t]);
+		}
+
+		int[] trajectory = decoder.getTrajectory();
+		assertEquals(STEPS, trajectory.length);
+		assertEquals(trajectory[STEPS - 1], decoder.getMostLikelyState());
+		double expected = bestLogProb(transitionModel, sensorModel, readings);
+		assertEquals(expected, logProb(transitionModel, sensorModel, readings, trajectory), 1e-9);
+	}
+
+	// a wall with a gap across the middle and a pillar
+	private static GridMap obstacleMap(int rows, int cols) {
+		boolean[] occupied = new boolean[rows * cols];
+		for (int col = 0; col < cols - 2; col++) {
+			occupied[(rows / 2) * cols + col] = true;
+		}
+		occupied[1 * cols + cols - 3] = true;
+		return new GridMap(rows, cols, occupied);
+	}
+
+	private static double logObservation(SensorModel sensorModel, GridMap map, int reading, int state) {
+		int cell = state / HEADS;
+		return Math.log(sensorModel.getProb(reading, map.getRow(cell), map.getCol(cell)));
+	}
+
+	private static double bestLogProb(TransitionModel transitionModel, SensorModel sensorModel, int[] readings) {
+		GridMap map = transitionModel.getGridMap();
+		int numStates = transitionModel.getNumStates();
+		double[][] logTransitions = new double[numStates][numStates];
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < numStates; j++) {
+				logTransitions[i][j] = Math.log(transitionModel.getProb(i, j));
+			}
+		}
+
+		double[] delta = new double[numStates];
+		for (int j = 0; j < numStates; j++) {
+			delta[j] = -Math.log(numStates);
+		}
+		for (int reading : readings) {
+			double[] next = new double[numStates];
+			for (int j = 0; j < numStates; j++) {
+				double best = Double.NEGATIVE_INFINITY;
+				for (int i = 0; i < numStates; i++) {
+					best = Math.max(best, delta[i] + logTransitions[i][j]);
+				}
+				next[j] = best + logObservation(sensorModel, map, reading, j);
+			}
+			delta = next;
+		}
+
+		double best = Double.NEGATIVE_INFINITY;
+		for (double value : delta) {
+			best = Math.max(best, value);
+		}
+		assertTrue(best > Double.NEGATIVE_INFINITY);
+		return best;
+	}
+
+	// log probability of a path starting from the uniform distribution before the first step
+	private static double logProb(TransitionModel transitionModel, SensorModel sensorModel, int[] readings,
+			int[] trajectory) {
+		GridMap map = transitionModel.getGridMap();
+		int numStates = transitionModel.getNumStates();
+		double best = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < numStates; i++) {
+			best = Math.max(best, Math.log(transitionModel.getProb(i, trajectory[0])));
+		}
+		double logProb = -Math.log(numStates) + best + logObservation(sensorModel, map, readings[0], trajectory[0]);
+		for (int t = 1; t < readings.length; t++) {
+			logProb += Math.log(transitionModel.getProb(trajectory[t - 1], trajectory[t]))
+					+ logObservation(sensorModel, map, readings[t], trajectory[t]);
+		}
+		return logProb;
+	}
+
+}
@@ -0,0 +1,27 @@
+package control;
+
+import model.LocalizationMetrics;
+
+/*
+ * Prints the metrics of a localizer to the console, e.g. scheduled with
+ * LocalizationMetrics.schedule(). Keeps formatting off the filter thread.
+ */
+public class ConsoleReporter implements LocalizationMetrics.SnapshotListener {
+
+	@Override
+	public void onSnapshot(LocalizationMetrics.Snapshot snapshot) {
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("Iteration: %d%n", snapshot.steps));
+		report.append(String.format("Euclidean Distance: %f (mean %f)%n", snapshot.lastEuclideanDistance,
+				snapshot.meanEuclideanDistance));
+		report.append(String.format("Manhattan Distance: %d (mean %f)%n", snapshot.lastManhattanDistance,
+				snapshot.meanManhattanDistance));
+		report.append(String.format("Num Correct: %d%n", snapshot.numCorrect));
+		report.append(String.format("Percent Correct Predictions: %d%%%n", (int) (snapshot.hitRate * 100)));
+		report.append(String.format("Entropy: %.3f bits (mean %.3f)%n", snapshot.lastEntropy, snapshot.meanEntropy));
+		report.append(String.format("Step Latency: mean %.0f ns, p50 < %d ns, p99 < %d ns%n",
+				snapshot.meanStepLatencyNanos, snapshot.stepLatencyP50Nanos, snapshot.stepLatencyP99Nanos));
+		System.out.println(report);
+	}
+
+}
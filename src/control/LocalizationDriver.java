@@ -2,6 +2,11 @@ package control;
 
 import view.*;
 
+/*
+ * Steps the estimator through the viewer while the viewer's run flag is set, sleeping
+ * stepTime ms between steps. A stepTime of 0 runs the estimator as fast as it goes;
+ * the viewer samples it at its own frame rate.
+ */
 public class LocalizationDriver extends Thread {
 	
 	private RobotLocalizationViewer l;
@@ -18,7 +23,8 @@ public class LocalizationDriver extends Thread {
 			
 			try{
 				l.updateContinuously();
-				sleep( timer);
+				if( timer > 0)
+					sleep( timer);
 			} catch( InterruptedException e) {
 				System.out.println( "oops");
 			}
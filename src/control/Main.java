@@ -1,6 +1,13 @@
 package control;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import model.DummyLocalizer;
+import model.GridMap;
 import model.HMMLocalizer;
 import view.RobotLocalizationViewer;
 
@@ -10,21 +17,34 @@ public class Main {
 	 * ...
 	 */
 	
-	public static void main( String[] args) {
+	public static void main( String[] args) throws IOException {
 		
 		/*
 		 * generate you own localiser / estimator wrapper here to plug it into the 
 		 * graphics class.
 		 */
-		EstimatorInterface l = new HMMLocalizer(4, 4, 4);
-//		EstimatorInterface l = new HMMLocalizer(5, 5, 4);
+		HMMLocalizer l = new HMMLocalizer(4, 4, 4);
+//		HMMLocalizer l = new HMMLocalizer(5, 5, 4);
+
+		/*
+		 * or localise on a floor plan, e.g. maps/floorplan.txt
+		 */
+		if (args.length > 0)
+			l = new HMMLocalizer(GridMap.load(new File(args[0])), 4);
+
+		/*
+		 * print the localizer's metrics once a second
+		 */
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+		l.getMetrics().schedule(reporter, 1, TimeUnit.SECONDS, new ConsoleReporter());
 
 		RobotLocalizationViewer viewer = new RobotLocalizationViewer( l);
 
 		/*
 		 * this thread controls the continuous update. If it is not started, 
-		 * you can only click through your localisation stepwise
+		 * you can only click through your localisation stepwise. It runs the
+		 * localiser at full speed, give it a step time to slow it down.
 		 */
-		new LocalizationDriver( 500, viewer).start();
+		new LocalizationDriver( 0, viewer).start();
 	}
 }	
\ No newline at end of file
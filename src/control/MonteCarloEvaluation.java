@@ -0,0 +1,210 @@
+package control;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import model.Histogram;
+import model.HMMLocalizer;
+import model.ParticleLocalizer;
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Headless accuracy evaluation: for every grid size and sensor model, runs many
+ * independent simulated trajectories in parallel on a work stealing ForkJoinPool and
+ * feeds the same readings to every estimator variant. Prints per variant the hit rate
+ * and mean Euclidean error with a 95% confidence interval over the trajectories, and
+ * quantiles of the Manhattan error over all steps.
+ *
+ *   MonteCarloEvaluation [<trajectories> [<steps> [<size> ...]]]
+ *
+ * Every trajectory gets its own SplittableRandom, split off the one seeded with
+ * -Dseed=<n> (default 1) in a fixed order, so a run is reproducible independent of
+ * the number of threads.
+ */
+public class MonteCarloEvaluation {
+
+	private static final String[] SENSORS = new String[] { "default", "sharp", "weak" };
+	private static final double[][] SENSOR_PROBS = new double[][] { { 0.1, 0.05, 0.025 }, { 0.3, 0.05, 0.0125 },
+			{ 0.05, 0.025, 0.0125 } };
+
+	private static final String[] ESTIMATORS = new String[] { "exact", "sparse", "particles" };
+	private static final double SPARSE_EPSILON = 1e-6;
+	private static final int SPARSE_FULL_PASS_INTERVAL = 50;
+	private static final int NUM_PARTICLES = 2000;
+
+	public static void main(String[] args) {
+		int trajectories = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		int steps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+		if (trajectories < 1 || steps < 1)
+			throw new IllegalArgumentException("Need at least one trajectory of at least one step");
+		int[] sizes = new int[] { 10, 20, 40 };
+		if (args.length > 2) {
+			sizes = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				sizes[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+
+		ForkJoinPool pool = new ForkJoinPool();
+		SplittableRandom random = new SplittableRandom(Long.getLong("seed", 1));
+		System.out.println(String.format("%d trajectories of %d steps on %d threads", trajectories, steps,
+				pool.getParallelism()));
+		System.out.println(String.format("%-8s %-8s %-10s %18s %18s %5s %5s %5s %10s", "grid", "sensor", "estimator",
+				"hit rate", "euclidean", "p50", "p90", "p99", "steps/s"));
+
+		for (int size : sizes) {
+			for (int s = 0; s < SENSORS.length; s++) {
+				TransitionModel transitionModel = new TransitionModel(size, size, 4);
+				double[] probs = SENSOR_PROBS[s];
+				SensorModel sensorModel = new SensorModel(size, size, probs[0], probs[1], probs[2]);
+
+				Result[] results = new Result[ESTIMATORS.length];
+				for (int e = 0; e < results.length; e++) {
+					results[e] = new Result(trajectories, 2 * size);
+				}
+				pool.invoke(new TrajectoryTask(transitionModel, sensorModel, steps, results, 0, trajectories,
+						random.split()));
+
+				for (int e = 0; e < results.length; e++) {
+					print(size + "x" + size, SENSORS[s], ESTIMATORS[e], results[e], (long) trajectories * steps);
+				}
+			}
+		}
+		pool.shutdown();
+	}
+
+	private static void print(String grid, String sensor, String estimator, Result result, long numSteps) {
+		System.out.println(String.format("%-8s %-8s %-10s %18s %18s %5d %5d %5d %10.0f", grid, sensor, estimator,
+				formatInterval(result.trajectoryHitRates, 100.0, "%"), formatInterval(result.trajectoryEuclidean, 1.0, ""),
+				result.manhattanDistances.getQuantile(0.5), result.manhattanDistances.getQuantile(0.9),
+				result.manhattanDistances.getQuantile(0.99), numSteps / (result.nanos.sum() / 1e9)));
+	}
+
+	// mean +- half width of the normal approximation 95% confidence interval
+	private static String formatInterval(double[] values, double scale, String unit) {
+		double sum = 0.0;
+		for (double value : values) {
+			sum += value;
+		}
+		double mean = sum / values.length;
+
+		double squares = 0.0;
+		for (double value : values) {
+			squares += (value - mean) * (value - mean);
+		}
+		double halfWidth = values.length > 1 ? 1.96 * Math.sqrt(squares / (values.length - 1) / values.length) : 0.0;
+		return String.format("%.2f +- %.2f%s", scale * mean, scale * halfWidth, unit);
+	}
+
+	/*
+	 * accumulates the errors of one estimator over all trajectories, from any thread
+	 */
+	private static class Result {
+
+		final Histogram manhattanDistances;
+		final LongAdder nanos = new LongAdder();
+
+		// written once per trajectory, each by the task that ran it
+		final double[] trajectoryHitRates;
+		final double[] trajectoryEuclidean;
+
+		Result(int trajectories, int maxDistance) {
+			manhattanDistances = Histogram.linear(maxDistance + 1);
+			trajectoryHitRates = new double[trajectories];
+			trajectoryEuclidean = new double[trajectories];
+		}
+	}
+
+	private static class TrajectoryTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TransitionModel transitionModel;
+		private final SensorModel sensorModel;
+		private final int steps;
+		private final Result[] results;
+		private final int start, end;
+		private final SplittableRandom random;
+
+		TrajectoryTask(TransitionModel transitionModel, SensorModel sensorModel, int steps, Result[] results,
+				int start, int end, SplittableRandom random) {
+			this.transitionModel = transitionModel;
+			this.sensorModel = sensorModel;
+			this.steps = steps;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+			this.random = random;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= 1) {
+				if (end > start)
+					runTrajectory(start);
+				return;
+			}
+
+			// split before forking, so every trajectory gets the same random whatever thread runs it
+			int mid = (start + end) >>> 1;
+			TrajectoryTask lower = new TrajectoryTask(transitionModel, sensorModel, steps, results, start, mid,
+					random.split());
+			TrajectoryTask upper = new TrajectoryTask(transitionModel, sensorModel, steps, results, mid, end, random);
+			invokeAll(lower, upper);
+		}
+
+		private void runTrajectory(int trajectory) {
+			RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, random.split());
+			HMMLocalizer exact = new HMMLocalizer(transitionModel, sensorModel);
+			HMMLocalizer sparse = new HMMLocalizer(transitionModel, sensorModel);
+			sparse.setSparse(SPARSE_EPSILON, SPARSE_FULL_PASS_INTERVAL);
+			ParticleLocalizer particles = new ParticleLocalizer(transitionModel, sensorModel, NUM_PARTICLES,
+					random.split());
+
+			int[] hits = new int[results.length];
+			double[] euclideanSums = new double[results.length];
+			long[] nanos = new long[results.length];
+
+			for (int t = 0; t < steps; t++) {
+				simulator.step();
+				int reading = simulator.getReading();
+				int trueRow = simulator.getRow();
+				int trueCol = simulator.getCol();
+
+				for (int e = 0; e < results.length; e++) {
+					long stepStart = System.nanoTime();
+					int predictionRow, predictionCol;
+					if (e == 0 || e == 1) {
+						HMMLocalizer localizer = e == 0 ? exact : sparse;
+						localizer.observe(reading);
+						predictionRow = localizer.getPredictionRow();
+						predictionCol = localizer.getPredictionCol();
+					} else {
+						particles.observe(reading);
+						predictionRow = particles.getPredictionRow();
+						predictionCol = particles.getPredictionCol();
+					}
+					nanos[e] += System.nanoTime() - stepStart;
+
+					int dRow = trueRow - predictionRow;
+					int dCol = trueCol - predictionCol;
+					if (dRow == 0 && dCol == 0)
+						hits[e]++;
+					euclideanSums[e] += Math.sqrt(dRow * dRow + dCol * dCol);
+					results[e].manhattanDistances.record(Math.abs(dRow) + Math.abs(dCol));
+				}
+			}
+
+			for (int e = 0; e < results.length; e++) {
+				results[e].trajectoryHitRates[trajectory] = (double) hits[e] / steps;
+				results[e].trajectoryEuclidean[trajectory] = euclideanSums[e] / steps;
+				results[e].nanos.add(nanos[e]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+package control;
+
+import java.util.SplittableRandom;
+
+import model.HMMLocalizer;
+import model.LocalizationMetrics;
+import model.OnlineParameterLearner;
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Simulates a robot whose motion and sensor deviate from the default parameters and
+ * runs two HMMLocalizers on its readings, both starting from the defaults: one keeps
+ * them, the other learns the parameters online. Prints the learned parameters as they
+ * converge and the accuracy of both localizers.
+ *
+ *   ParameterLearning [<steps> [<size>]]
+ */
+public class ParameterLearning {
+
+	private static final double TRUE_KEEP_HEADING_PROB = 0.9;
+	private static final double TRUE_POSITION_PROB = 0.3;
+	private static final double TRUE_PRIMARY_RING_PROB = 0.05;
+	private static final double TRUE_SECONDARY_RING_PROB = 0.0125;
+
+	private static final int NUM_REPORTS = 10;
+
+	public static void main(String[] args) {
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		RobotSimulator simulator = new RobotSimulator(new TransitionModel(size, size, 4, TRUE_KEEP_HEADING_PROB),
+				new SensorModel(size, size, TRUE_POSITION_PROB, TRUE_PRIMARY_RING_PROB, TRUE_SECONDARY_RING_PROB),
+				new SplittableRandom(Long.getLong("seed", 1)));
+
+		HMMLocalizer fixed = new HMMLocalizer(size, size, 4);
+		HMMLocalizer learning = new HMMLocalizer(size, size, 4);
+		learning.setLearner(new OnlineParameterLearner(learning.getTransitionModel(), learning.getSensorModel()));
+
+		System.out.println(String.format("%8s %8s %8s %8s %8s %8s", "steps", "keep", "position", "primary",
+				"secondary", "refits"));
+		print("true", TRUE_KEEP_HEADING_PROB, TRUE_POSITION_PROB, TRUE_PRIMARY_RING_PROB, TRUE_SECONDARY_RING_PROB, 0);
+
+		for (int t = 1; t <= steps; t++) {
+			simulator.step();
+			int reading = simulator.getReading();
+			fixed.observe(reading);
+			learning.observe(reading);
+			fixed.getMetrics().recordPrediction(simulator.getRow(), simulator.getCol(), fixed.getPredictionRow(),
+					fixed.getPredictionCol());
+			learning.getMetrics().recordPrediction(simulator.getRow(), simulator.getCol(),
+					learning.getPredictionRow(), learning.getPredictionCol());
+
+			if (t % Math.max(1, steps / NUM_REPORTS) == 0) {
+				TransitionModel transitionModel = learning.getTransitionModel();
+				SensorModel sensorModel = learning.getSensorModel();
+				print(Integer.toString(t), transitionModel.getKeepHeadingProb(), sensorModel.getPositionProb(),
+						sensorModel.getPrimaryRingProb(), sensorModel.getSecondaryRingProb(), learning.getNumRefits());
+			}
+		}
+
+		System.out.println();
+		printAccuracy("default", fixed.getMetrics());
+		printAccuracy("learned", learning.getMetrics());
+	}
+
+	private static void print(String steps, double keep, double position, double primary, double secondary,
+			int refits) {
+		System.out.println(String.format("%8s %8.4f %8.4f %8.4f %8.4f %8d", steps, keep, position, primary,
+				secondary, refits));
+	}
+
+	private static void printAccuracy(String parameters, LocalizationMetrics metrics) {
+		System.out.println(String.format("%-8s hit rate %6.2f%%, mean manhattan %.3f", parameters,
+				100.0 * metrics.getHitRate(), metrics.getMeanManhattanDistance()));
+	}
+
+}
@@ -0,0 +1,81 @@
+package control;
+
+import java.util.SplittableRandom;
+
+import model.HMMLocalizer;
+import model.LocalizationMetrics;
+import model.ParticleLocalizer;
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Runs the exact HMMLocalizer filter and ParticleLocalizer with different numbers of
+ * particles on the same simulated readings and prints hit rate, mean error and steps
+ * per second of each.
+ *
+ *   ParticleComparison [<steps> [<size> ...]]
+ */
+public class ParticleComparison {
+
+	private static final int[] NUM_PARTICLES = new int[] { 1000, 10000, 100000 };
+
+	public static void main(String[] args) {
+		int steps = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int[] sizes = new int[] { 20, 50, 100 };
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				sizes[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		System.out.println(String.format("%-10s %-18s %10s %10s %10s %12s", "grid", "estimator", "hit rate",
+				"manhattan", "euclidean", "steps/s"));
+		for (int size : sizes) {
+			compare(size, steps);
+		}
+	}
+
+	private static void compare(int size, int steps) {
+		TransitionModel transitionModel = new TransitionModel(size, size, 4);
+		SensorModel sensorModel = new SensorModel(size, size);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, sensorModel, new SplittableRandom(size));
+
+		int[] readings = new int[steps];
+		int[] truePositions = new int[steps];
+		for (int t = 0; t < steps; t++) {
+			simulator.step();
+			readings[t] = simulator.getReading();
+			truePositions[t] = simulator.getRow() * size + simulator.getCol();
+		}
+
+		HMMLocalizer exact = new HMMLocalizer(size, size, 4);
+		long start = System.nanoTime();
+		for (int t = 0; t < steps; t++) {
+			exact.observe(readings[t]);
+			exact.getMetrics().recordPrediction(truePositions[t] / size, truePositions[t] % size,
+					exact.getPredictionRow(), exact.getPredictionCol());
+		}
+		print(size, "exact", exact.getMetrics(), steps, System.nanoTime() - start);
+
+		for (int numParticles : NUM_PARTICLES) {
+			ParticleLocalizer particles = new ParticleLocalizer(transitionModel, sensorModel, numParticles,
+					new SplittableRandom(size));
+			start = System.nanoTime();
+			for (int t = 0; t < steps; t++) {
+				particles.observe(readings[t]);
+				particles.getMetrics().recordPrediction(truePositions[t] / size, truePositions[t] % size,
+						particles.getPredictionRow(), particles.getPredictionCol());
+			}
+			print(size, numParticles + " particles", particles.getMetrics(), steps, System.nanoTime() - start);
+		}
+	}
+
+	private static void print(int size, String estimator, LocalizationMetrics metrics, int steps, long nanos) {
+		System.out.println(String.format("%-10s %-18s %9.2f%% %10.3f %10.3f %12.0f", size + "x" + size, estimator,
+				100.0 * metrics.getHitRate(), metrics.getMeanManhattanDistance(), metrics.getMeanEuclideanDistance(),
+				steps / (nanos / 1e9)));
+	}
+
+}
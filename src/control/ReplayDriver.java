@@ -0,0 +1,152 @@
+package control;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.SplittableRandom;
+
+import model.GridMap;
+import model.HMMLocalizer;
+import model.ModelCache;
+import model.RobotSimulator;
+import model.SensorModel;
+import model.TransitionModel;
+
+/*
+ * Headless replay of a SensorLog through the HMMLocalizer filter, as fast as the filter
+ * goes. Optionally writes the prediction and its error for every step to a CSV file.
+ *
+ *   ReplayDriver replay <log> [<output.csv>]
+ *   ReplayDriver record <rows> <cols> <steps> <log> [<seed>]
+ *
+ * record writes a log of a simulated robot, e.g. to try out replay; with a seed the
+ * log is the same on every run. With
+ * -Dmodel.cache=<directory> replay takes its models from a ModelCache in that directory.
+ *
+ * A logged reading that the current belief cannot explain, e.g. a glitch of a real
+ * sensor, does not break the replay: the filter takes the robot as lost and restarts
+ * from the uniform belief with that reading, see ForwardFilter.step(). A logged index
+ * outside the SensorModel means a corrupt log and stops the replay with an
+ * IllegalArgumentException, see HMMLocalizer.observe().
+ */
+public class ReplayDriver {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 2 && args[0].equals("replay")) {
+			replay(new File(args[1]), args.length > 2 ? new File(args[2]) : null);
+		} else if ((args.length == 5 || args.length == 6) && args[0].equals("record")) {
+			SplittableRandom random = args.length == 6 ? new SplittableRandom(Long.parseLong(args[5]))
+					: new SplittableRandom();
+			record(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]), new File(args[4]),
+					random);
+		} else {
+			System.out.println("usage: ReplayDriver replay <log> [<output.csv>]");
+			System.out.println("       ReplayDriver record <rows> <cols> <steps> <log> [<seed>]");
+		}
+	}
+
+	public static void replay(File logFile, File outputFile) throws IOException {
+		SensorLog.Reader log = new SensorLog.Reader(logFile);
+		Writer output = null;
+		try {
+			int rows = log.getNumRows();
+			int cols = log.getNumCols();
+			long modelStart = System.nanoTime();
+			HMMLocalizer localizer = createLocalizer(rows, cols);
+			System.out.println(String.format("Models: %.3f s", (System.nanoTime() - modelStart) / 1e9));
+			int nothing = localizer.getSensorModel().getNothingReading();
+
+			StringBuilder line = new StringBuilder();
+			if (outputFile != null) {
+				output = new BufferedWriter(new FileWriter(outputFile), 1 << 16);
+				output.write("step,reading_row,reading_col,true_row,true_col,prediction_row,prediction_col,prediction_prob,manhattan,euclidean\n");
+			}
+
+			long step = 0, numKnown = 0, numCorrect = 0, manhattanSum = 0;
+			double euclideanSum = 0.0;
+			long start = System.nanoTime();
+
+			while (log.next()) {
+				int reading = log.getReading();
+				int truePosition = log.getTruePosition();
+				localizer.observe(reading);
+
+				int predictionRow = localizer.getPredictionRow();
+				int predictionCol = localizer.getPredictionCol();
+				int manhattan = -1;
+				double euclidean = -1.0;
+				if (truePosition != SensorLog.UNKNOWN_POSITION) {
+					int dRow = truePosition / cols - predictionRow;
+					int dCol = truePosition % cols - predictionCol;
+					manhattan = Math.abs(dRow) + Math.abs(dCol);
+					euclidean = Math.sqrt(dRow * dRow + dCol * dCol);
+
+					numKnown++;
+					if (manhattan == 0)
+						numCorrect++;
+					manhattanSum += manhattan;
+					euclideanSum += euclidean;
+				}
+
+				if (output != null) {
+					line.setLength(0);
+					line.append(step).append(',');
+					appendPosition(line, reading == nothing ? SensorLog.UNKNOWN_POSITION : reading, cols);
+					appendPosition(line, truePosition, cols);
+					line.append(predictionRow).append(',').append(predictionCol).append(',');
+					line.append(localizer.getPredictionProb()).append(',');
+					line.append(manhattan).append(',').append(euclidean).append('\n');
+					output.append(line);
+				}
+				step++;
+			}
+
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("Steps: %d in %.3f s (%.0f steps/s)", step, seconds, step / seconds));
+			if (numKnown > 0) {
+				System.out.println(String.format("Percent Correct Predictions: %.2f%%", 100.0 * numCorrect / numKnown));
+				System.out.println(String.format("Mean Manhattan Distance: %.4f", (double) manhattanSum / numKnown));
+				System.out.println(String.format("Mean Euclidean Distance: %.4f", euclideanSum / numKnown));
+			}
+		} finally {
+			log.close();
+			if (output != null)
+				output.close();
+		}
+	}
+
+	private static HMMLocalizer createLocalizer(int rows, int cols) throws IOException {
+		String cacheDirectory = System.getProperty("model.cache");
+		if (cacheDirectory == null)
+			return new HMMLocalizer(rows, cols, 4);
+
+		ModelCache.Models models = new ModelCache(new File(cacheDirectory)).load(GridMap.empty(rows, cols), 4);
+		return new HMMLocalizer(models.transitionModel, models.sensorModel);
+	}
+
+	private static void appendPosition(StringBuilder line, int position, int cols) {
+		if (position == SensorLog.UNKNOWN_POSITION)
+			line.append("-1,-1,");
+		else
+			line.append(position / cols).append(',').append(position % cols).append(',');
+	}
+
+	public static void record(int rows, int cols, long steps, File logFile, SplittableRandom random)
+			throws IOException {
+		TransitionModel transitionModel = new TransitionModel(rows, cols, 4);
+		RobotSimulator simulator = new RobotSimulator(transitionModel, new SensorModel(rows, cols), random);
+
+		SensorLog.Writer log = new SensorLog.Writer(logFile, rows, cols);
+		try {
+			for (long step = 0; step < steps; step++) {
+				simulator.step();
+				log.write(simulator.getReading(), simulator.getRow() * cols + simulator.getCol());
+			}
+		} finally {
+			log.close();
+		}
+	}
+
+}
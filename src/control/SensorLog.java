@@ -0,0 +1,137 @@
+package control;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Binary log of sensor readings for offline replay.
+ *
+ * The file starts with a 16 byte header (magic, version, rows, cols) followed by one
+ * 8 byte record per step: the SensorModel index of the reading and the index
+ * row * cols + col of the true position, or -1 if the true position is unknown.
+ * All values are big endian ints.
+ */
+public class SensorLog {
+
+	public static final int MAGIC = 0x534c4f47; // "SLOG"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	public static final int RECORD_SIZE = 8;
+
+	public static final int UNKNOWN_POSITION = -1;
+
+	// records are mapped in windows of this many bytes so logs can exceed 2 GB
+	private static final long WINDOW_SIZE = (1L << 30) / RECORD_SIZE * RECORD_SIZE;
+
+	public static class Writer implements Closeable {
+
+		private final DataOutputStream out;
+
+		public Writer(File file, int rows, int cols) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(rows);
+			out.writeInt(cols);
+		}
+
+		public void write(int reading, int truePosition) throws IOException {
+			out.writeInt(reading);
+			out.writeInt(truePosition);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	public static class Reader implements Closeable {
+
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final int rows, cols;
+		private final long numSteps;
+
+		private MappedByteBuffer window;
+		private long windowStart;
+		private long step;
+		private int reading, truePosition;
+
+		public Reader(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			channel = this.file.getChannel();
+
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+				throw new IOException(file + " is not a sensor log");
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported sensor log version " + version);
+			rows = header.getInt();
+			cols = header.getInt();
+
+			numSteps = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+			step = 0;
+			windowStart = 0;
+			mapWindow();
+		}
+
+		private void mapWindow() throws IOException {
+			long start = HEADER_SIZE + windowStart;
+			long size = Math.min(WINDOW_SIZE, numSteps * RECORD_SIZE - windowStart);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		}
+
+		/*
+		 * moves to the next record, returns false at the end of the log
+		 */
+		public boolean next() throws IOException {
+			if (step == numSteps)
+				return false;
+
+			if (!window.hasRemaining()) {
+				windowStart += window.capacity();
+				mapWindow();
+			}
+
+			reading = window.getInt();
+			truePosition = window.getInt();
+			step++;
+			return true;
+		}
+
+		public int getReading() {
+			return reading;
+		}
+
+		public int getTruePosition() {
+			return truePosition;
+		}
+
+		public int getNumRows() {
+			return rows;
+		}
+
+		public int getNumCols() {
+			return cols;
+		}
+
+		public long getNumSteps() {
+			return numSteps;
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package model;
+
+/*
+ * Builds Walker / Vose alias tables, which sample a discrete distribution over n
+ * outcomes with one uniform number in O(1): pick slot i = floor(u * n) and take
+ * outcome i if the fraction of u * n is below aliasProbs[i], otherwise aliases[i].
+ *
+ * Tables of many small distributions are written side by side into flat arrays; the
+ * instance only holds the scratch space for building them.
+ */
+class AliasTable {
+
+	private final double[] scaled;
+	private final int[] small, large;
+
+	AliasTable(int maxOutcomes) {
+		scaled = new double[maxOutcomes];
+		small = new int[maxOutcomes];
+		large = new int[maxOutcomes];
+	}
+
+	/*
+	 * builds the table of the distribution proportional to weights[start .. start + n - 1]
+	 * into aliasProbs and aliases at the same positions. Aliases are outcome numbers
+	 * 0 .. n - 1, relative to start.
+	 */
+	void build(double[] weights, int start, int n, double[] aliasProbs, int[] aliases) {
+		double sum = 0.0;
+		for (int i = 0; i < n; i++) {
+			sum += weights[start + i];
+		}
+
+		int numSmall = 0, numLarge = 0;
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[start + i] * n / sum;
+			if (scaled[i] < 1.0)
+				small[numSmall++] = i;
+			else
+				large[numLarge++] = i;
+		}
+
+		while (numSmall > 0 && numLarge > 0) {
+			int s = small[--numSmall];
+			int l = large[--numLarge];
+			aliasProbs[start + s] = scaled[s];
+			aliases[start + s] = l;
+			scaled[l] += scaled[s] - 1.0;
+			if (scaled[l] < 1.0)
+				small[numSmall++] = l;
+			else
+				large[numLarge++] = l;
+		}
+
+		// whatever is left is 1 up to rounding
+		while (numLarge > 0) {
+			int l = large[--numLarge];
+			aliasProbs[start + l] = 1.0;
+			aliases[start + l] = l;
+		}
+		while (numSmall > 0) {
+			int s = small[--numSmall];
+			aliasProbs[start + s] = 1.0;
+			aliases[start + s] = s;
+		}
+	}
+
+}
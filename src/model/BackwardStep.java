@@ -0,0 +1,72 @@
+package model;
+
+/*
+ * One step of the backward recursion b = T * O * b' of forward-backward smoothing,
+ * over the successor lists of the sparse TransitionModel. The result is normalized to
+ * sum 1, which only rescales the smoothed estimates and keeps long sequences from
+ * underflowing.
+ */
+public class BackwardStep {
+
+	private final TransitionModel transitionModel;
+	private final SensorModel sensorModel;
+	private final GridMap map;
+	private final int heads;
+
+	private final double[] scaled;
+
+	public BackwardStep(TransitionModel transitionModel, SensorModel sensorModel) {
+		this.transitionModel = transitionModel;
+		this.sensorModel = sensorModel;
+		this.map = transitionModel.getGridMap();
+		this.heads = transitionModel.getNumHead();
+
+		scaled = new double[transitionModel.getNumStates()];
+	}
+
+	/*
+	 * computes the message for step t - 1 from the message in of step t, reading being
+	 * the reading of step t. in and out may be the same array.
+	 *
+	 * If no state at t - 1 can explain the readings from t on, the forward filter has
+	 * restarted from the uniform belief at t (see ForwardFilter.step()), so nothing
+	 * before t is tied to them and out is set to the uninformative uniform message.
+	 */
+	public void step(int reading, double[] in, double[] out) {
+		int j = 0;
+		for (int cell = 0; cell < map.getNumCells(); cell++) {
+			double observationProb = sensorModel.getProb(reading, map.getRow(cell), map.getCol(cell));
+			for (int head = 0; head < heads; head++, j++) {
+				scaled[j] = observationProb * in[j];
+			}
+		}
+
+		int[] successorStart = transitionModel.getSuccessorStart();
+		int[] successors = transitionModel.getSuccessors();
+		double[] successorProbs = transitionModel.getSuccessorProbs();
+
+		double sum = 0.0;
+		for (int i = 0; i < out.length; i++) {
+			double prob = 0.0;
+			for (int k = successorStart[i]; k < successorStart[i + 1]; k++) {
+				prob += successorProbs[k] * scaled[successors[k]];
+			}
+			out[i] = prob;
+			sum += prob;
+		}
+
+		if (sum == 0.0) {
+			double uniformProb = 1.0 / out.length;
+			for (int i = 0; i < out.length; i++) {
+				out[i] = uniformProb;
+			}
+			return;
+		}
+
+		double normalizer = 1.0 / sum;
+		for (int i = 0; i < out.length; i++) {
+			out[i] *= normalizer;
+		}
+	}
+
+}
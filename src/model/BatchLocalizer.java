@@ -0,0 +1,190 @@
+package model;
+
+/*
+ * Forward filter for many independent robots on the same map. All robots share one
+ * TransitionModel and one SensorModel; only the beliefs are per robot.
+ *
+ * The beliefs are stored state major, the belief of robot r in state i being at
+ * index i * numRobots + r. A step walks the transition structure once and applies
+ * every transition to all robots in a tight inner loop over contiguous memory, instead
+ * of walking the structure once per robot.
+ */
+public class BatchLocalizer {
+
+	private final TransitionModel transitionModel;
+	private final SensorModel sensorModel;
+	private final GridMap map;
+	private final int heads, numRobots;
+
+	private double[] beliefs;
+	private double[] nextBeliefs;
+
+	// per robot scratch, allocated once
+	private final double[] observationProbs;
+	private final double[] sums;
+
+	public BatchLocalizer(TransitionModel transitionModel, SensorModel sensorModel, int numRobots) {
+		this.transitionModel = transitionModel;
+		this.sensorModel = sensorModel;
+		this.map = transitionModel.getGridMap();
+		this.heads = transitionModel.getNumHead();
+		this.numRobots = numRobots;
+
+		beliefs = new double[transitionModel.getNumStates() * numRobots];
+		nextBeliefs = new double[beliefs.length];
+		observationProbs = new double[numRobots];
+		sums = new double[numRobots];
+		reset();
+	}
+
+	/*
+	 * sets the belief of every robot to the uniform distribution over all states
+	 */
+	public void reset() {
+		double initialProb = 1.0 / transitionModel.getNumStates();
+		for (int i = 0; i < beliefs.length; i++) {
+			beliefs[i] = initialProb;
+		}
+	}
+
+	/*
+	 * advances all robots one step, readings[r] being the SensorModel reading index of robot r
+	 */
+	public void stepAll(int[] readings) {
+		if (readings.length != numRobots)
+			throw new IllegalArgumentException("Expected " + numRobots + " readings, got " + readings.length);
+
+		int[] predecessorStart = transitionModel.getPredecessorStart();
+		int[] predecessors = transitionModel.getPredecessors();
+		double[] predecessorProbs = transitionModel.getPredecessorProbs();
+
+		for (int r = 0; r < numRobots; r++) {
+			sums[r] = 0.0;
+		}
+
+		int j = 0;
+		for (int cell = 0; cell < map.getNumCells(); cell++) {
+			int row = map.getRow(cell);
+			int col = map.getCol(cell);
+			for (int r = 0; r < numRobots; r++) {
+				observationProbs[r] = sensorModel.getProb(readings[r], row, col);
+			}
+
+			for (int head = 0; head < heads; head++, j++) {
+				int base = j * numRobots;
+				for (int r = 0; r < numRobots; r++) {
+					nextBeliefs[base + r] = 0.0;
+				}
+
+				for (int k = predecessorStart[j]; k < predecessorStart[j + 1]; k++) {
+					double prob = predecessorProbs[k];
+					int predecessorBase = predecessors[k] * numRobots;
+					for (int r = 0; r < numRobots; r++) {
+						nextBeliefs[base + r] += prob * beliefs[predecessorBase + r];
+					}
+				}
+
+				for (int r = 0; r < numRobots; r++) {
+					double prob = nextBeliefs[base + r] * observationProbs[r];
+					nextBeliefs[base + r] = prob;
+					sums[r] += prob;
+				}
+			}
+		}
+
+		for (int r = 0; r < numRobots; r++) {
+			if (sums[r] == 0.0)
+				restart(r, readings[r]);
+			sums[r] = 1.0 / sums[r];
+		}
+		for (int base = 0; base < nextBeliefs.length; base += numRobots) {
+			for (int r = 0; r < numRobots; r++) {
+				nextBeliefs[base + r] *= sums[r];
+			}
+		}
+
+		double[] tmp = beliefs;
+		beliefs = nextBeliefs;
+		nextBeliefs = tmp;
+	}
+
+	/*
+	 * redoes the step of one robot from the uniform belief, for a reading that none of
+	 * its states can explain, as ForwardFilter.step() does. A reading that no free cell
+	 * can produce leaves the robot's belief uniform.
+	 */
+	private void restart(int robot, int reading) {
+		int[] predecessorStart = transitionModel.getPredecessorStart();
+		double[] predecessorProbs = transitionModel.getPredecessorProbs();
+		double initialProb = 1.0 / transitionModel.getNumStates();
+
+		double sum = 0.0;
+		int j = 0;
+		for (int cell = 0; cell < map.getNumCells(); cell++) {
+			double observationProb = sensorModel.getProb(reading, map.getRow(cell), map.getCol(cell));
+			for (int head = 0; head < heads; head++, j++) {
+				double prob = 0.0;
+				for (int k = predecessorStart[j]; k < predecessorStart[j + 1]; k++) {
+					prob += predecessorProbs[k];
+				}
+				prob *= initialProb * observationProb;
+				nextBeliefs[j * numRobots + robot] = prob;
+				sum += prob;
+			}
+		}
+
+		if (sum == 0.0) {
+			for (int i = robot; i < nextBeliefs.length; i += numRobots) {
+				nextBeliefs[i] = initialProb;
+			}
+			sum = 1.0;
+		}
+		sums[robot] = sum;
+	}
+
+	public int getNumRobots() {
+		return numRobots;
+	}
+
+	/*
+	 * returns the belief of robot r to be in state i of the TransitionModel
+	 */
+	public double getProb(int robot, int state) {
+		return beliefs[state * numRobots + robot];
+	}
+
+	/*
+	 * returns the belief of robot r to be in (row, col), summed over the headings
+	 */
+	public double getCurrentProb(int robot, int row, int col) {
+		if (!map.isFree(row, col))
+			return 0.0;
+		return getCellProb(robot, map.getCell(row, col));
+	}
+
+	private double getCellProb(int robot, int cell) {
+		int base = cell * heads * numRobots + robot;
+		double summedProb = 0.0;
+		for (int head = 0; head < heads; head++) {
+			summedProb += beliefs[base + head * numRobots];
+		}
+		return summedProb;
+	}
+
+	/*
+	 * returns the SensorModel index of the most likely position of robot r
+	 */
+	public int getPrediction(int robot) {
+		int prediction = 0;
+		double maxProb = -1.0;
+		for (int cell = 0; cell < map.getNumCells(); cell++) {
+			double prob = getCellProb(robot, cell);
+			if (prob > maxProb) {
+				maxProb = prob;
+				prediction = cell;
+			}
+		}
+		return sensorModel.getReadingIndex(map.getRow(prediction), map.getCol(prediction));
+	}
+
+}
@@ -0,0 +1,368 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Compact wire format for a belief over the states of a TransitionModel, e.g. to ship
+ * it from a robot to a fleet server instead of S doubles.
+ *
+ * A belief is thresholded (states below threshold times the largest probability are
+ * dropped), quantized to 8 or 16 bits relative to the largest probability and written
+ * either as
+ *
+ *   SPARSE:   the number of kept states, then per kept state the varint gap to the
+ *             previous kept state and the quantized value, or
+ *   QUADTREE: one bit per node of a quadtree over the grid, telling whether the node
+ *             holds any kept state, descending into the non-empty nodes only, and the
+ *             quantized values of all headings of every non-empty cell.
+ *
+ * SPARSE is smaller for beliefs on a few scattered states, QUADTREE for beliefs that
+ * cover whole regions of the map. Both start with a 19 byte header: format, bits,
+ * headings, rows, cols, a hash of the map's free cells and the largest probability as a
+ * float. Decoding renormalizes, so the result is a distribution again.
+ *
+ * decode() reads data that came over the network, so it checks every read against the
+ * header and the end of the data. A truncated or corrupt belief, or one for another
+ * map, throws an IllegalArgumentException.
+ *
+ * A codec reuses its buffers and is not thread safe.
+ */
+public class BeliefCodec {
+
+	public enum Format {
+		SPARSE, QUADTREE
+	}
+
+	public static final double DEFAULT_THRESHOLD = 1e-4;
+
+	private static final int HEADER_SIZE = 3 + 4 * 4;
+
+	private final GridMap map;
+	private final int rows, cols, heads, numStates;
+	private final int mapHash;
+	private final Format format;
+	private final int bits, levels;
+	private final double threshold;
+
+	// quantized values of the last encoded belief and prefix counts of the cells with a kept state
+	private final int[] quantized;
+	private final int[] keptPrefix;
+	private byte[] buffer;
+	private byte[] input;
+	private int position;
+	private long bitBuffer;
+	private int bitCount;
+
+	public BeliefCodec(TransitionModel transitionModel, Format format, int bits) {
+		this(transitionModel, format, bits, DEFAULT_THRESHOLD);
+	}
+
+	public BeliefCodec(TransitionModel transitionModel, Format format, int bits, double threshold) {
+		if (bits != 8 && bits != 16)
+			throw new IllegalArgumentException("Only 8 or 16 bit quantization supported, got " + bits);
+
+		this.map = transitionModel.getGridMap();
+		this.rows = map.getNumRows();
+		this.cols = map.getNumCols();
+		this.heads = transitionModel.getNumHead();
+		this.numStates = transitionModel.getNumStates();
+		this.mapHash = getMapHash(map);
+		this.format = format;
+		this.bits = bits;
+		this.levels = (1 << bits) - 1;
+		this.threshold = threshold;
+
+		quantized = new int[numStates];
+		keptPrefix = format == Format.QUADTREE ? new int[(rows + 1) * (cols + 1)] : null;
+		buffer = new byte[HEADER_SIZE + 64];
+	}
+
+	// 32 bit FNV-1a over the state index, so beliefs for maps of the same size but other obstacles are told apart
+	private static int getMapHash(GridMap map) {
+		int hash = 0x811c9dc5;
+		for (int row = 0; row < map.getNumRows(); row++) {
+			for (int col = 0; col < map.getNumCols(); col++) {
+				hash = (hash ^ map.getCell(row, col)) * 0x01000193;
+			}
+		}
+		return hash;
+	}
+
+	public byte[] encode(double[] belief) {
+		if (belief.length != numStates)
+			throw new IllegalArgumentException("Expected " + numStates + " states, got " + belief.length);
+
+		double maxProb = 0.0;
+		for (double prob : belief) {
+			if (prob > maxProb)
+				maxProb = prob;
+		}
+
+		int numKept = 0;
+		double cutoff = threshold * maxProb;
+		for (int i = 0; i < numStates; i++) {
+			int value = 0;
+			if (belief[i] >= cutoff && maxProb > 0.0)
+				value = (int) Math.round(belief[i] / maxProb * levels);
+			quantized[i] = value;
+			if (value != 0)
+				numKept++;
+		}
+
+		position = 0;
+		bitBuffer = 0;
+		bitCount = 0;
+		ensureCapacity(HEADER_SIZE);
+		writeByte(format.ordinal());
+		writeByte(bits);
+		writeByte(heads);
+		writeInt(rows);
+		writeInt(cols);
+		writeInt(mapHash);
+		writeInt(Float.floatToIntBits((float) maxProb));
+
+		if (format == Format.SPARSE)
+			encodeSparse(numKept);
+		else
+			encodeQuadtree();
+
+		return Arrays.copyOf(buffer, position);
+	}
+
+	private void encodeSparse(int numKept) {
+		ensureCapacity(5 + numKept * (5 + bits / 8));
+		writeVarint(numKept);
+		int previous = -1;
+		for (int i = 0; i < numStates; i++) {
+			if (quantized[i] == 0)
+				continue;
+			writeVarint(i - previous - 1);
+			if (bits == 16)
+				writeByte(quantized[i] >>> 8);
+			writeByte(quantized[i]);
+			previous = i;
+		}
+	}
+
+	private void encodeQuadtree() {
+		// keptPrefix[(row + 1) * (cols + 1) + col + 1] counts the cells with a kept state in rows 0..row, cols 0..col
+		for (int row = 0; row < rows; row++) {
+			int rowSum = 0;
+			for (int col = 0; col < cols; col++) {
+				int cell = map.getCell(row, col);
+				if (cell >= 0) {
+					for (int head = 0; head < heads; head++) {
+						if (quantized[cell * heads + head] != 0) {
+							rowSum++;
+							break;
+						}
+					}
+				}
+				keptPrefix[(row + 1) * (cols + 1) + col + 1] = keptPrefix[row * (cols + 1) + col + 1] + rowSum;
+			}
+		}
+
+		int numKeptCells = keptPrefix[keptPrefix.length - 1];
+		// at most 4/3 * 2 bits per kept cell and level, plus the values
+		ensureCapacity(8 + (numKeptCells * (4 * 33 + heads * bits)) / 8);
+		writeNode(0, 0, getQuadtreeSize());
+		flushBits();
+	}
+
+	private int getQuadtreeSize() {
+		int size = 1;
+		while (size < rows || size < cols) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	private int countKept(int row0, int col0, int size) {
+		int row1 = Math.min(rows, row0 + size);
+		int col1 = Math.min(cols, col0 + size);
+		if (row0 >= row1 || col0 >= col1)
+			return 0;
+		int stride = cols + 1;
+		return keptPrefix[row1 * stride + col1] - keptPrefix[row0 * stride + col1] - keptPrefix[row1 * stride + col0]
+				+ keptPrefix[row0 * stride + col0];
+	}
+
+	private void writeNode(int row0, int col0, int size) {
+		boolean kept = countKept(row0, col0, size) > 0;
+		writeBits(kept ? 1 : 0, 1);
+		if (!kept)
+			return;
+
+		if (size == 1) {
+			int stateStart = map.getCell(row0, col0) * heads;
+			for (int head = 0; head < heads; head++) {
+				writeBits(quantized[stateStart + head], bits);
+			}
+			return;
+		}
+
+		int half = size >> 1;
+		writeNode(row0, col0, half);
+		writeNode(row0, col0 + half, half);
+		writeNode(row0 + half, col0, half);
+		writeNode(row0 + half, col0 + half, half);
+	}
+
+	/*
+	 * decodes into belief, which is normalized to sum 1 afterwards. If the data is
+	 * rejected, belief may have been partly overwritten.
+	 */
+	public void decode(byte[] data, double[] belief) {
+		if (belief.length != numStates)
+			throw new IllegalArgumentException("Expected " + numStates + " states, got " + belief.length);
+		if (data.length < HEADER_SIZE || data[0] != format.ordinal() || data[1] != bits)
+			throw new IllegalArgumentException("Not a " + format + " " + bits + " bit belief");
+
+		input = data;
+		position = 2;
+		bitBuffer = 0;
+		bitCount = 0;
+		try {
+			if (readByte() != heads || readInt() != rows || readInt() != cols || readInt() != mapHash)
+				throw new IllegalArgumentException("Belief for a different map");
+			float maxProb = Float.intBitsToFloat(readInt());
+			if (!(maxProb >= 0.0f) || Float.isInfinite(maxProb))
+				throw new IllegalArgumentException("Corrupt belief: largest probability " + maxProb);
+			double scale = maxProb / levels;
+
+			Arrays.fill(belief, 0.0);
+			if (format == Format.SPARSE)
+				decodeSparse(belief, scale);
+			else
+				readNode(0, 0, getQuadtreeSize(), belief, scale);
+			if (position != data.length)
+				throw new IllegalArgumentException("Corrupt belief: " + (data.length - position) + " bytes left over");
+		} finally {
+			input = null;
+		}
+
+		double sum = 0.0;
+		for (double prob : belief) {
+			sum += prob;
+		}
+		if (sum > 0.0) {
+			double normalizer = 1.0 / sum;
+			for (int i = 0; i < belief.length; i++) {
+				belief[i] *= normalizer;
+			}
+		}
+	}
+
+	private void decodeSparse(double[] belief, double scale) {
+		int numKept = readVarint();
+		if (numKept > numStates)
+			throw new IllegalArgumentException("Corrupt belief: " + numKept + " states kept");
+		int i = -1;
+		for (int k = 0; k < numKept; k++) {
+			int gap = readVarint();
+			if (gap > numStates - 2 - i)
+				throw new IllegalArgumentException("Corrupt belief: state index past " + numStates);
+			i += gap + 1;
+			int value = readByte();
+			if (bits == 16)
+				value = value << 8 | readByte();
+			belief[i] = value * scale;
+		}
+	}
+
+	private void readNode(int row0, int col0, int size, double[] belief, double scale) {
+		if (readBits(1) == 0)
+			return;
+
+		if (size == 1) {
+			int cell = map.getCell(row0, col0);
+			if (cell < 0)
+				throw new IllegalArgumentException("Corrupt belief: no free cell at " + row0 + ", " + col0);
+			int stateStart = cell * heads;
+			for (int head = 0; head < heads; head++) {
+				belief[stateStart + head] = readBits(bits) * scale;
+			}
+			return;
+		}
+
+		int half = size >> 1;
+		readNode(row0, col0, half, belief, scale);
+		readNode(row0, col0 + half, half, belief, scale);
+		readNode(row0 + half, col0, half, belief, scale);
+		readNode(row0 + half, col0 + half, half, belief, scale);
+	}
+
+	private void ensureCapacity(int extra) {
+		if (position + extra > buffer.length)
+			buffer = Arrays.copyOf(buffer, Math.max(position + extra, 2 * buffer.length));
+	}
+
+	private void writeByte(int value) {
+		buffer[position++] = (byte) value;
+	}
+
+	private void writeInt(int value) {
+		writeByte(value >>> 24);
+		writeByte(value >>> 16);
+		writeByte(value >>> 8);
+		writeByte(value);
+	}
+
+	private void writeVarint(int value) {
+		while ((value & ~0x7f) != 0) {
+			writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		writeByte(value);
+	}
+
+	private void writeBits(int value, int numBits) {
+		bitBuffer = bitBuffer << numBits | value;
+		bitCount += numBits;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			writeByte((int) (bitBuffer >>> bitCount));
+		}
+	}
+
+	private void flushBits() {
+		if (bitCount > 0)
+			writeByte((int) (bitBuffer << (8 - bitCount)));
+		bitCount = 0;
+	}
+
+	private int readByte() {
+		if (position >= input.length)
+			throw new IllegalArgumentException("Truncated belief");
+		return input[position++] & 0xff;
+	}
+
+	private int readInt() {
+		return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+	}
+
+	// a non-negative int, at most 5 bytes
+	private int readVarint() {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				if (shift == 28 && b > 0x07)
+					break;
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Corrupt belief: bad varint");
+	}
+
+	private int readBits(int numBits) {
+		while (bitCount < numBits) {
+			bitBuffer = bitBuffer << 8 | readByte();
+			bitCount += 8;
+		}
+		bitCount -= numBits;
+		return (int) (bitBuffer >>> bitCount) & ((1 << numBits) - 1);
+	}
+
+}
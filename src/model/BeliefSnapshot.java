@@ -0,0 +1,56 @@
+package model;
+
+/*
+ * Immutable state of a localizer after one step: the position marginal, the prediction
+ * and the true pose and reading the step was made with. A localizer publishes a new
+ * snapshot after every step, see SnapshotSource, so readers on other threads always
+ * see one consistent step without locking the localizer.
+ */
+public class BeliefSnapshot {
+
+	// the number of steps the localizer had made
+	public final long version;
+
+	// -1, -1, -1 if the localizer was only fed readings and has no simulated robot
+	public final int trueRow, trueCol, trueHeading;
+	// -1, -1 if the sensor reported nothing
+	public final int readingRow, readingCol;
+
+	public final int predictionRow, predictionCol;
+	public final double predictionProb;
+	// of the position marginal, in bits
+	public final double entropy;
+
+	private final GridMap map;
+	// marginal[cell] over the GridMap cells, never modified after construction
+	private final double[] marginal;
+
+	BeliefSnapshot(long version, GridMap map, double[] marginal, int[] trueState, int[] reading, int predictionRow,
+			int predictionCol, double predictionProb, double entropy) {
+		this.version = version;
+		this.map = map;
+		this.marginal = marginal;
+		this.trueRow = trueState == null ? -1 : trueState[0];
+		this.trueCol = trueState == null ? -1 : trueState[1];
+		this.trueHeading = trueState == null ? -1 : trueState[2];
+		this.readingRow = reading == null ? -1 : reading[0];
+		this.readingCol = reading == null ? -1 : reading[1];
+		this.predictionRow = predictionRow;
+		this.predictionCol = predictionCol;
+		this.predictionProb = predictionProb;
+		this.entropy = entropy;
+	}
+
+	public GridMap getGridMap() {
+		return map;
+	}
+
+	/*
+	 * the probability of the robot being in (row, col), 0 for an occupied cell
+	 */
+	public double getProb(int row, int col) {
+		int cell = map.getCell(row, col);
+		return cell < 0 ? 0.0 : marginal[cell];
+	}
+
+}
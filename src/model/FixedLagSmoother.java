@@ -0,0 +1,86 @@
+package model;
+
+/*
+ * Online fixed-lag smoothing: after the reading of step t it gives the smoothed
+ * estimate for step t - lag, using the readings up to t.
+ *
+ * The forward messages and readings of the last lag + 1 steps are kept in a ring
+ * buffer; each step runs the backward recursion over the lag most recent readings,
+ * so a step costs O(lag * S) and the smoother holds (lag + 1) * S doubles.
+ */
+public class FixedLagSmoother {
+
+	private final ForwardFilter forwardFilter;
+	private final BackwardStep backwardStep;
+	private final int lag;
+
+	private final double[][] forwardRing;
+	private final int[] readingRing;
+	private final double[] backward;
+	private final double[] smoothed;
+	private long step;
+
+	public FixedLagSmoother(TransitionModel transitionModel, SensorModel sensorModel, int lag) {
+		if (lag < 0)
+			throw new IllegalArgumentException("Negative lag " + lag);
+
+		this.forwardFilter = new ForwardFilter(transitionModel, sensorModel);
+		this.backwardStep = new BackwardStep(transitionModel, sensorModel);
+		this.lag = lag;
+
+		int numStates = transitionModel.getNumStates();
+		forwardRing = new double[lag + 1][numStates];
+		readingRing = new int[lag + 1];
+		backward = new double[numStates];
+		smoothed = new double[numStates];
+		step = 0;
+	}
+
+	/*
+	 * filters the next reading, returns true if a smoothed estimate for step
+	 * getSmoothedStep() is available, i.e. once more than lag readings have been seen
+	 */
+	public boolean step(int reading) {
+		forwardFilter.step(reading);
+		int slot = (int) (step % (lag + 1));
+		System.arraycopy(forwardFilter.getFVector(), 0, forwardRing[slot], 0, smoothed.length);
+		readingRing[slot] = reading;
+		step++;
+
+		if (step <= lag)
+			return false;
+
+		for (int i = 0; i < backward.length; i++) {
+			backward[i] = 1.0;
+		}
+		for (long t = step - 1; t > step - 1 - lag; t--) {
+			backwardStep.step(readingRing[(int) (t % (lag + 1))], backward, backward);
+		}
+
+		ForwardBackwardSmoother.combine(forwardRing[(int) ((step - 1 - lag) % (lag + 1))], backward, smoothed);
+		return true;
+	}
+
+	/*
+	 * the step the current smoothed estimate belongs to, counting readings from 0
+	 */
+	public long getSmoothedStep() {
+		return step - 1 - lag;
+	}
+
+	/*
+	 * the smoothed distribution over the TransitionModel states for getSmoothedStep(),
+	 * valid until the next step
+	 */
+	public double[] getSmoothed() {
+		return smoothed;
+	}
+
+	/*
+	 * the filtered distribution for the last reading
+	 */
+	public double[] getFVector() {
+		return forwardFilter.getFVector();
+	}
+
+}
@@ -0,0 +1,119 @@
+package model;
+
+/*
+ * Single precision variant of ForwardFilter. The belief is kept as float[], which halves
+ * the memory traffic of a step, and every probability that falls below flushThreshold
+ * after normalizing is set to exactly 0. On large grids most of the belief otherwise
+ * decays into denormal numbers, which are very slow to compute with on x86, and a
+ * zero belief lets the next step skip states that get no mass.
+ *
+ * The loops are plain array loops over float[] that the JIT can vectorize.
+ */
+public class FloatForwardFilter {
+
+	public static final float DEFAULT_FLUSH_THRESHOLD = 1e-30f;
+
+	private final TransitionModel transitionModel;
+	private final SensorModel sensorModel;
+	private final GridMap map;
+	private final int rows, heads;
+	private final float flushThreshold;
+
+	private final float[] predecessorProbs;
+	private float[] fVector;
+	private float[] nextFVector;
+
+	public FloatForwardFilter(TransitionModel transitionModel, SensorModel sensorModel) {
+		this(transitionModel, sensorModel, DEFAULT_FLUSH_THRESHOLD);
+	}
+
+	public FloatForwardFilter(TransitionModel transitionModel, SensorModel sensorModel, float flushThreshold) {
+		this.transitionModel = transitionModel;
+		this.sensorModel = sensorModel;
+		this.map = transitionModel.getGridMap();
+		this.rows = transitionModel.getNumRows();
+		this.heads = transitionModel.getNumHead();
+		this.flushThreshold = flushThreshold;
+
+		double[] probs = transitionModel.getPredecessorProbs();
+		predecessorProbs = new float[probs.length];
+		for (int k = 0; k < probs.length; k++) {
+			predecessorProbs[k] = (float) probs[k];
+		}
+
+		fVector = new float[transitionModel.getNumStates()];
+		nextFVector = new float[transitionModel.getNumStates()];
+		reset();
+	}
+
+	public void reset() {
+		float initialProb = 1.0f / fVector.length;
+		for (int i = 0; i < fVector.length; i++) {
+			fVector[i] = initialProb;
+		}
+	}
+
+	/*
+	 * advances the belief one step given the index of the current reading in the
+	 * SensorModel. A reading that no state can explain restarts from the uniform belief,
+	 * as in ForwardFilter.step().
+	 */
+	public void step(int reading) {
+		double sum = predict(reading);
+		if (sum == 0.0) {
+			reset();
+			sum = predict(reading);
+			if (sum == 0.0)
+				return;
+		}
+
+		float normalizer = (float) (1.0 / sum);
+		float threshold = flushThreshold;
+		for (int i = 0; i < nextFVector.length; i++) {
+			float prob = nextFVector[i] * normalizer;
+			nextFVector[i] = prob < threshold ? 0.0f : prob;
+		}
+
+		float[] tmp = fVector;
+		fVector = nextFVector;
+		nextFVector = tmp;
+	}
+
+	// writes the unnormalized new belief to nextFVector and returns its sum
+	private double predict(int reading) {
+		int[] predecessorStart = transitionModel.getPredecessorStart();
+		int[] predecessors = transitionModel.getPredecessors();
+
+		// rows are summed in float, the rows in double: S floats can lose a lot in a float sum
+		double sum = 0.0;
+		int j = 0;
+		for (int row = 0; row < rows; row++) {
+			float rowSum = 0.0f;
+			int cellEnd = map.getRowStart(row + 1);
+			for (int cell = map.getRowStart(row); cell < cellEnd; cell++) {
+				float observationProb = (float) sensorModel.getProb(reading, row, map.getCol(cell));
+				for (int head = 0; head < heads; head++, j++) {
+					float prob = 0.0f;
+					if (observationProb != 0.0f) {
+						for (int k = predecessorStart[j]; k < predecessorStart[j + 1]; k++) {
+							prob += predecessorProbs[k] * fVector[predecessors[k]];
+						}
+						prob *= observationProb;
+					}
+					nextFVector[j] = prob;
+					rowSum += prob;
+				}
+			}
+			sum += rowSum;
+		}
+		return sum;
+	}
+
+	/*
+	 * the current belief, indexed like the TransitionModel states, valid until the next step
+	 */
+	public float[] getFVector() {
+		return fVector;
+	}
+
+}
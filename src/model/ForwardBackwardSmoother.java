@@ -0,0 +1,104 @@
+package model;
+
+/*
+ * Offline forward-backward smoothing of a whole sequence of readings, using the same
+ * TransitionModel and SensorModel as the filter.
+ *
+ * Keeping every forward message would take S * T doubles. Instead the forward pass only
+ * keeps a checkpoint every k = ceil(sqrt(T)) steps. The backward pass walks the
+ * segments between checkpoints from the last one to the first, recomputes the k forward
+ * messages of a segment from its checkpoint and combines them with the backward
+ * message, so memory stays at O(S * sqrt(T)) for about twice the forward work.
+ *
+ * The smoothed estimates are handed to a Listener, from the last step to the first.
+ */
+public class ForwardBackwardSmoother {
+
+	public interface Listener {
+		/*
+		 * belief is the smoothed distribution over the TransitionModel states for step t.
+		 * The array is reused after the call returns.
+		 */
+		public void onSmoothed(int t, double[] belief);
+	}
+
+	private final TransitionModel transitionModel;
+	private final ForwardFilter forwardFilter;
+	private final BackwardStep backwardStep;
+
+	public ForwardBackwardSmoother(TransitionModel transitionModel, SensorModel sensorModel) {
+		this.transitionModel = transitionModel;
+		this.forwardFilter = new ForwardFilter(transitionModel, sensorModel);
+		this.backwardStep = new BackwardStep(transitionModel, sensorModel);
+	}
+
+	/*
+	 * smooths the readings (SensorModel indices), the robot starting from the uniform
+	 * distribution before the first reading
+	 */
+	public void smooth(int[] readings, Listener listener) {
+		int numSteps = readings.length;
+		if (numSteps == 0)
+			return;
+
+		int numStates = transitionModel.getNumStates();
+		int segmentLength = (int) Math.ceil(Math.sqrt(numSteps));
+		int numSegments = (numSteps + segmentLength - 1) / segmentLength;
+
+		// checkpoints[c] is the forward message before the first step of segment c
+		double[][] checkpoints = new double[numSegments][];
+		forwardFilter.reset();
+		for (int t = 0; t < numSteps; t++) {
+			if (t % segmentLength == 0)
+				checkpoints[t / segmentLength] = forwardFilter.getFVector().clone();
+			forwardFilter.step(readings[t]);
+		}
+
+		double[][] segment = new double[segmentLength][numStates];
+		double[] backward = new double[numStates];
+		double[] smoothed = new double[numStates];
+		for (int i = 0; i < numStates; i++) {
+			backward[i] = 1.0;
+		}
+
+		for (int c = numSegments - 1; c >= 0; c--) {
+			int segmentStart = c * segmentLength;
+			int segmentEnd = Math.min(numSteps, segmentStart + segmentLength);
+
+			forwardFilter.setFVector(checkpoints[c]);
+			checkpoints[c] = null;
+			for (int t = segmentStart; t < segmentEnd; t++) {
+				forwardFilter.step(readings[t]);
+				System.arraycopy(forwardFilter.getFVector(), 0, segment[t - segmentStart], 0, numStates);
+			}
+
+			for (int t = segmentEnd - 1; t >= segmentStart; t--) {
+				combine(segment[t - segmentStart], backward, smoothed);
+				listener.onSmoothed(t, smoothed);
+				backwardStep.step(readings[t], backward, backward);
+			}
+		}
+	}
+
+	/*
+	 * smoothed = alpha * forward .* backward. If the two messages have no state in
+	 * common, e.g. around a reading no state could explain, the forward message alone
+	 * is the best estimate left.
+	 */
+	static void combine(double[] forward, double[] backward, double[] smoothed) {
+		double sum = 0.0;
+		for (int i = 0; i < smoothed.length; i++) {
+			smoothed[i] = forward[i] * backward[i];
+			sum += smoothed[i];
+		}
+		if (sum == 0.0) {
+			System.arraycopy(forward, 0, smoothed, 0, smoothed.length);
+			return;
+		}
+		double normalizer = 1.0 / sum;
+		for (int i = 0; i < smoothed.length; i++) {
+			smoothed[i] *= normalizer;
+		}
+	}
+
+}
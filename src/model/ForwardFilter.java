@@ -0,0 +1,528 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Forward filtering f' = alpha * O * T^T * f on top of the sparse TransitionModel.
+ *
+ * One step pulls the probability mass of every state from its (at most four)
+ * predecessors, scales it with the SensorModel probability of the state's position and
+ * normalizes, so it costs O(S) and does not allocate. The filter keeps two belief
+ * buffers and swaps them after every step.
+ *
+ * Large grids can optionally be stepped on a ForkJoinPool, see setParallelism(), and
+ * beliefs that are concentrated on few states can be tracked sparsely, see setSparse().
+ *
+ * Along with the belief every step produces the position marginal (the belief summed
+ * over the headings) and its most likely cell, so reading them is O(1).
+ */
+public class ForwardFilter {
+
+	private final TransitionModel transitionModel;
+	private final SensorModel sensorModel;
+	private final GridMap map;
+	private final int rows, cols, heads;
+
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+	private double[] fVector;
+	private double[] nextFVector;
+
+	// marginal[cell] over the GridMap cells, its argmax and per row the cell of the row's maximum
+	private final double[] marginal;
+	private final int[] rowMaxCell;
+	private int predictedCell;
+
+	private ForkJoinPool pool;
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	/*
+	 * sparse mode: fVector is 0 outside activeStates[0 .. numActive - 1] and
+	 * nextFVector is all 0 between steps
+	 */
+	private boolean sparse;
+	private double epsilon;
+	private int fullPassInterval, stepsSinceFullPass;
+	private int[] activeStates, nextActiveStates, touchedStates;
+	private int numActive;
+
+	public ForwardFilter(TransitionModel transitionModel, SensorModel sensorModel) {
+		this.transitionModel = transitionModel;
+		this.sensorModel = sensorModel;
+		this.map = transitionModel.getGridMap();
+		this.rows = transitionModel.getNumRows();
+		this.cols = transitionModel.getNumCols();
+		this.heads = transitionModel.getNumHead();
+
+		fVector = new double[transitionModel.getNumStates()];
+		nextFVector = new double[transitionModel.getNumStates()];
+		marginal = new double[map.getNumCells()];
+		rowMaxCell = new int[rows];
+		reset();
+	}
+
+	/*
+	 * sets the belief to the uniform distribution over all states
+	 */
+	public void reset() {
+		double initialProb = 1.0 / fVector.length;
+		for (int i = 0; i < fVector.length; i++) {
+			fVector[i] = initialProb;
+		}
+		if (sparse)
+			rebuildActiveStates(0.0);
+		updateMarginal();
+	}
+
+	/*
+	 * sets the belief to a copy of the given distribution
+	 */
+	public void setFVector(double[] belief) {
+		System.arraycopy(belief, 0, fVector, 0, fVector.length);
+		if (sparse)
+			rebuildActiveStates(0.0);
+		updateMarginal();
+	}
+
+	/*
+	 * lets step() run on the given pool, split into bands of rows, whenever the grid has
+	 * at least parallelThreshold states. A null pool turns the parallel mode off.
+	 */
+	public void setParallelism(ForkJoinPool pool, int parallelThreshold) {
+		this.pool = pool;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/*
+	 * turns on sparse tracking: only states with a belief of at least epsilon are kept
+	 * and a step only touches their successors, so it costs O(number of kept states).
+	 * Every fullPassInterval steps, and whenever a reading fits none of the kept states,
+	 * a full O(S) step is done from the belief plus epsilon in every state, so that a
+	 * robot that ended up outside the tracked support (e.g. kidnapped) is found again.
+	 * A full step is also done while more than a quarter of the states are kept.
+	 * epsilon <= 0 turns sparse tracking off.
+	 */
+	public void setSparse(double epsilon, int fullPassInterval) {
+		if (epsilon <= 0.0) {
+			sparse = false;
+			return;
+		}
+
+		if (activeStates == null) {
+			activeStates = new int[fVector.length];
+			nextActiveStates = new int[fVector.length];
+			touchedStates = new int[fVector.length];
+		}
+		this.epsilon = epsilon;
+		this.fullPassInterval = fullPassInterval;
+		stepsSinceFullPass = 0;
+		sparse = true;
+		Arrays.fill(nextFVector, 0.0);
+		rebuildActiveStates(0.0);
+	}
+
+	/*
+	 * the number of states the sparse mode currently tracks, S when not sparse
+	 */
+	public int getNumActive() {
+		return sparse ? numActive : fVector.length;
+	}
+
+	/*
+	 * advances the belief one step given the index of the current reading in the SensorModel.
+	 *
+	 * A reading that no state can explain, e.g. a corrupt or foreign reading in an
+	 * external or replayed stream, or a robot that was carried off, would leave nothing
+	 * to normalize. The robot is then taken to be lost and the step is redone from the
+	 * uniform belief; the sparse mode does the same through its full pass. A reading
+	 * that no free cell can produce at all leaves the belief uniform.
+	 */
+	public void step(int reading) {
+		if (!sparse) {
+			denseStep(reading);
+			return;
+		}
+
+		stepsSinceFullPass++;
+		if (stepsSinceFullPass >= fullPassInterval) {
+			fullPass(reading, epsilon);
+		} else if (4 * numActive > fVector.length) {
+			fullPass(reading, 0.0);
+		} else if (!sparseStep(reading)) {
+			fullPass(reading, epsilon);
+		}
+	}
+
+	private void fullPass(int reading, double floor) {
+		if (floor > 0.0) {
+			for (int i = 0; i < fVector.length; i++) {
+				fVector[i] += floor;
+			}
+			stepsSinceFullPass = 0;
+		}
+
+		denseStep(reading);
+		Arrays.fill(nextFVector, 0.0);
+		rebuildActiveStates(epsilon);
+	}
+
+	/*
+	 * drops the states below threshold from fVector, renormalizes and lists the rest as
+	 * active. Keeps everything if nothing would be left.
+	 */
+	private void rebuildActiveStates(double threshold) {
+		double kept = 0.0;
+		numActive = 0;
+		for (int i = 0; i < fVector.length; i++) {
+			if (fVector[i] >= threshold && fVector[i] > 0.0) {
+				activeStates[numActive++] = i;
+				kept += fVector[i];
+			}
+		}
+
+		if (numActive == 0) {
+			if (threshold > 0.0)
+				rebuildActiveStates(0.0);
+			return;
+		}
+
+		double normalizer = 1.0 / kept;
+		int a = 0;
+		for (int i = 0; i < fVector.length; i++) {
+			if (a < numActive && activeStates[a] == i) {
+				fVector[i] *= normalizer;
+				a++;
+			} else {
+				fVector[i] = 0.0;
+			}
+		}
+		updateMarginal();
+	}
+
+	/*
+	 * recomputes the marginal and its argmax from fVector
+	 */
+	private void updateMarginal() {
+		predictedCell = 0;
+		int j = 0;
+		for (int cell = 0; cell < marginal.length; cell++) {
+			double prob = 0.0;
+			for (int head = 0; head < heads; head++, j++) {
+				prob += fVector[j];
+			}
+			marginal[cell] = prob;
+			if (prob > marginal[predictedCell])
+				predictedCell = cell;
+		}
+	}
+
+	/*
+	 * the position marginal, indexed by GridMap cell. Owned by the filter and updated in
+	 * place by every step.
+	 */
+	public double[] getMarginal() {
+		return marginal;
+	}
+
+	/*
+	 * the GridMap cell of the most likely position
+	 */
+	public int getPredictedCell() {
+		return predictedCell;
+	}
+
+	public double getPredictedProb() {
+		return marginal[predictedCell];
+	}
+
+	/*
+	 * the entropy of the position marginal in bits. In sparse mode only the cells of the
+	 * tracked states can be non-zero, so it costs O(number of kept states) there.
+	 */
+	public double getMarginalEntropy() {
+		double entropy = 0.0;
+		if (sparse) {
+			for (int a = 0; a < numActive; a++) {
+				int j = activeStates[a];
+				// every cell once, at its first tracked heading; fVector is 0 outside the tracked states
+				int first = j - j % heads;
+				while (fVector[first] == 0.0) {
+					first++;
+				}
+				if (first == j)
+					entropy -= marginal[j / heads] * Math.log(marginal[j / heads]);
+			}
+		} else {
+			for (int cell = 0; cell < marginal.length; cell++) {
+				double prob = marginal[cell];
+				if (prob > 0.0)
+					entropy -= prob * Math.log(prob);
+			}
+		}
+		return entropy / Math.log(2.0);
+	}
+
+	/*
+	 * pushes the mass of the active states to their successors. Returns false, leaving
+	 * the belief untouched, if the reading has probability 0 for all of them.
+	 */
+	private boolean sparseStep(int reading) {
+		int[] successorStart = transitionModel.getSuccessorStart();
+		int[] successors = transitionModel.getSuccessors();
+		double[] successorProbs = transitionModel.getSuccessorProbs();
+
+		// nextFVector is 0 everywhere, so a 0 entry has not been touched yet
+		int numTouched = 0;
+		for (int a = 0; a < numActive; a++) {
+			int i = activeStates[a];
+			double prob = fVector[i];
+			for (int k = successorStart[i]; k < successorStart[i + 1]; k++) {
+				int j = successors[k];
+				if (nextFVector[j] == 0.0)
+					touchedStates[numTouched++] = j;
+				nextFVector[j] += successorProbs[k] * prob;
+			}
+		}
+
+		double sum = 0.0;
+		for (int t = 0; t < numTouched; t++) {
+			int j = touchedStates[t];
+			int cell = j / heads;
+			double prob = nextFVector[j] * sensorModel.getProb(reading, map.getRow(cell), map.getCol(cell));
+			nextFVector[j] = prob;
+			sum += prob;
+		}
+
+		if (sum == 0.0) {
+			for (int t = 0; t < numTouched; t++) {
+				nextFVector[touchedStates[t]] = 0.0;
+			}
+			return false;
+		}
+
+		// states below epsilon are dropped, unless that would drop all of them
+		double threshold = epsilon * sum;
+		boolean anyAboveThreshold = false;
+		for (int t = 0; t < numTouched && !anyAboveThreshold; t++) {
+			anyAboveThreshold = nextFVector[touchedStates[t]] >= threshold;
+		}
+		if (!anyAboveThreshold)
+			threshold = Double.MIN_VALUE;
+
+		double kept = 0.0;
+		int numNextActive = 0;
+		for (int t = 0; t < numTouched; t++) {
+			int j = touchedStates[t];
+			double prob = nextFVector[j];
+			if (prob < threshold) {
+				nextFVector[j] = 0.0;
+			} else {
+				nextActiveStates[numNextActive++] = j;
+				kept += prob;
+			}
+		}
+
+		double normalizer = 1.0 / kept;
+		for (int a = 0; a < numNextActive; a++) {
+			nextFVector[nextActiveStates[a]] *= normalizer;
+		}
+
+		for (int a = 0; a < numActive; a++) {
+			int i = activeStates[a];
+			fVector[i] = 0.0;
+			marginal[i / heads] = 0.0;
+		}
+
+		for (int a = 0; a < numNextActive; a++) {
+			int j = nextActiveStates[a];
+			marginal[j / heads] += nextFVector[j];
+		}
+		predictedCell = nextActiveStates[0] / heads;
+		for (int a = 1; a < numNextActive; a++) {
+			int cell = nextActiveStates[a] / heads;
+			if (marginal[cell] > marginal[predictedCell] || (marginal[cell] == marginal[predictedCell] && cell < predictedCell))
+				predictedCell = cell;
+		}
+
+		double[] tmp = fVector;
+		fVector = nextFVector;
+		nextFVector = tmp;
+		int[] tmpActive = activeStates;
+		activeStates = nextActiveStates;
+		nextActiveStates = tmpActive;
+		numActive = numNextActive;
+		return true;
+	}
+
+	private void denseStep(int reading) {
+		double sum = predict(reading);
+		if (sum == 0.0) {
+			reset();
+			sum = predict(reading);
+			if (sum == 0.0) {
+				updateMarginal();
+				return;
+			}
+		}
+		normalize(1.0 / sum);
+
+		predictedCell = 0;
+		for (int row = 0; row < rows; row++) {
+			int cell = rowMaxCell[row];
+			if (cell >= 0 && marginal[cell] > marginal[predictedCell])
+				predictedCell = cell;
+		}
+
+		double[] tmp = fVector;
+		fVector = nextFVector;
+		nextFVector = tmp;
+	}
+
+	private boolean isParallel() {
+		return pool != null && fVector.length >= parallelThreshold;
+	}
+
+	private int getBandRows() {
+		return Math.max(1, rows / (4 * pool.getParallelism()));
+	}
+
+	private double predict(int reading) {
+		if (isParallel())
+			return pool.invoke(new PredictTask(reading, 0, rows, getBandRows()));
+		return predictRows(reading, 0, rows);
+	}
+
+	private void normalize(double normalizer) {
+		if (isParallel())
+			pool.invoke(new NormalizeTask(normalizer, 0, rows, getBandRows()));
+		else
+			normalizeRows(normalizer, 0, rows);
+	}
+
+	/*
+	 * writes the unnormalized new belief of rows [rowStart, rowEnd) to nextFVector, and
+	 * its marginal to marginal and rowMaxCell, and returns its sum. The predecessors of a
+	 * row lie at most one row away, so a band reads the rows rowStart - 1 .. rowEnd of
+	 * fVector, which no band writes to.
+	 */
+	private double predictRows(int reading, int rowStart, int rowEnd) {
+		boolean nothing = reading == sensorModel.getNothingReading();
+		int readingRow = reading / cols;
+		int readingCol = reading % cols;
+
+		int[] predecessorStart = transitionModel.getPredecessorStart();
+		int[] predecessors = transitionModel.getPredecessors();
+		double[] predecessorProbs = transitionModel.getPredecessorProbs();
+
+		double sum = 0.0;
+		int j = map.getRowStart(rowStart) * heads;
+		for (int row = rowStart; row < rowEnd; row++) {
+			int maxCell = -1;
+			double maxProb = -1.0;
+			int cellEnd = map.getRowStart(row + 1);
+			for (int cell = map.getRowStart(row); cell < cellEnd; cell++) {
+				int col = map.getCol(cell);
+				double observationProb = nothing ? sensorModel.getNothingProb(row, col)
+						: sensorModel.getKernelProb(readingRow - row, readingCol - col);
+				double cellProb = 0.0;
+				for (int head = 0; head < heads; head++, j++) {
+					double prob = 0.0;
+					if (observationProb != 0.0) {
+						for (int k = predecessorStart[j]; k < predecessorStart[j + 1]; k++) {
+							prob += predecessorProbs[k] * fVector[predecessors[k]];
+						}
+						prob *= observationProb;
+					}
+					nextFVector[j] = prob;
+					cellProb += prob;
+				}
+				marginal[cell] = cellProb;
+				if (cellProb > maxProb) {
+					maxProb = cellProb;
+					maxCell = cell;
+				}
+				sum += cellProb;
+			}
+			rowMaxCell[row] = maxCell;
+		}
+
+		return sum;
+	}
+
+	private void normalizeRows(double normalizer, int rowStart, int rowEnd) {
+		int cellStart = map.getRowStart(rowStart);
+		int cellEnd = map.getRowStart(rowEnd);
+		int end = cellEnd * heads;
+		for (int i = cellStart * heads; i < end; i++) {
+			nextFVector[i] *= normalizer;
+		}
+		for (int cell = cellStart; cell < cellEnd; cell++) {
+			marginal[cell] *= normalizer;
+		}
+	}
+
+	private class PredictTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int reading, rowStart, rowEnd, bandRows;
+
+		PredictTask(int reading, int rowStart, int rowEnd, int bandRows) {
+			this.reading = reading;
+			this.rowStart = rowStart;
+			this.rowEnd = rowEnd;
+			this.bandRows = bandRows;
+		}
+
+		@Override
+		protected Double compute() {
+			if (rowEnd - rowStart <= bandRows)
+				return predictRows(reading, rowStart, rowEnd);
+
+			int rowMid = (rowStart + rowEnd) >>> 1;
+			PredictTask upper = new PredictTask(reading, rowStart, rowMid, bandRows);
+			upper.fork();
+			double lowerSum = new PredictTask(reading, rowMid, rowEnd, bandRows).compute();
+			return upper.join() + lowerSum;
+		}
+	}
+
+	private class NormalizeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final double normalizer;
+		private final int rowStart, rowEnd, bandRows;
+
+		NormalizeTask(double normalizer, int rowStart, int rowEnd, int bandRows) {
+			this.normalizer = normalizer;
+			this.rowStart = rowStart;
+			this.rowEnd = rowEnd;
+			this.bandRows = bandRows;
+		}
+
+		@Override
+		protected void compute() {
+			if (rowEnd - rowStart <= bandRows) {
+				normalizeRows(normalizer, rowStart, rowEnd);
+				return;
+			}
+
+			int rowMid = (rowStart + rowEnd) >>> 1;
+			invokeAll(new NormalizeTask(normalizer, rowStart, rowMid, bandRows),
+					new NormalizeTask(normalizer, rowMid, rowEnd, bandRows));
+		}
+	}
+
+	/*
+	 * the current belief, indexed like the TransitionModel states. The array is owned
+	 * by the filter and only valid until the next step.
+	 */
+	public double[] getFVector() {
+		return fVector;
+	}
+
+}
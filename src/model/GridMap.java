@@ -0,0 +1,215 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/*
+ * The floor plan the robot moves on: a rows x cols grid in which every cell is either
+ * free or occupied. Only the free cells are numbered, row by row, with dense cell
+ * indices 0 .. getNumCells() - 1, and the models only keep states for those, so
+ * obstacles cost neither memory nor time in the filters.
+ *
+ * Maps are loaded from an occupancy bitmap, either a PBM image (P1 or P4, 1 = occupied)
+ * or a text file with one line per row where '#' marks an occupied cell and every other
+ * character a free one.
+ */
+public class GridMap {
+
+	private final int rows, cols;
+
+	// cellIndex[row * cols + col] is the dense index of a free cell, -1 for an occupied one
+	private final int[] cellIndex;
+	private final int[] cellRows, cellCols;
+	// the free cells of row r are rowStart[r] .. rowStart[r + 1] - 1
+	private final int[] rowStart;
+
+	/*
+	 * occupied[row * cols + col] tells whether the cell is an obstacle
+	 */
+	public GridMap(int rows, int cols, boolean[] occupied) {
+		if (rows <= 0 || cols <= 0)
+			throw new IllegalArgumentException("Illegal map size " + rows + " x " + cols);
+		if (occupied.length != rows * cols)
+			throw new IllegalArgumentException("Expected " + rows * cols + " cells, got " + occupied.length);
+
+		this.rows = rows;
+		this.cols = cols;
+
+		int numCells = 0;
+		for (int i = 0; i < occupied.length; i++) {
+			if (!occupied[i])
+				numCells++;
+		}
+		if (numCells == 0)
+			throw new IllegalArgumentException("Map has no free cells");
+
+		cellIndex = new int[rows * cols];
+		cellRows = new int[numCells];
+		cellCols = new int[numCells];
+		rowStart = new int[rows + 1];
+
+		int cell = 0;
+		for (int row = 0; row < rows; row++) {
+			rowStart[row] = cell;
+			for (int col = 0; col < cols; col++) {
+				if (occupied[row * cols + col]) {
+					cellIndex[row * cols + col] = -1;
+				} else {
+					cellIndex[row * cols + col] = cell;
+					cellRows[cell] = row;
+					cellCols[cell] = col;
+					cell++;
+				}
+			}
+		}
+		rowStart[rows] = cell;
+	}
+
+	/*
+	 * a map without obstacles
+	 */
+	public static GridMap empty(int rows, int cols) {
+		return new GridMap(rows, cols, new boolean[rows * cols]);
+	}
+
+	public static GridMap load(File file) throws IOException {
+		byte[] data = Files.readAllBytes(file.toPath());
+		if (data.length >= 2 && data[0] == 'P' && (data[1] == '1' || data[1] == '4'))
+			return parsePbm(data, file);
+		return parseText(data, file);
+	}
+
+	private static GridMap parseText(byte[] data, File file) throws IOException {
+		String[] lines = new String(data, "US-ASCII").split("\r?\n");
+		int rows = lines.length;
+		while (rows > 0 && lines[rows - 1].isEmpty()) {
+			rows--;
+		}
+		if (rows == 0)
+			throw new IOException(file + ": empty map");
+
+		int cols = lines[0].length();
+		boolean[] occupied = new boolean[rows * cols];
+		for (int row = 0; row < rows; row++) {
+			if (lines[row].length() != cols)
+				throw new IOException(file + ": line " + (row + 1) + " has " + lines[row].length()
+						+ " cells, expected " + cols);
+			for (int col = 0; col < cols; col++) {
+				occupied[row * cols + col] = lines[row].charAt(col) == '#';
+			}
+		}
+		return createMap(rows, cols, occupied, file);
+	}
+
+	private static GridMap parsePbm(byte[] data, File file) throws IOException {
+		boolean plain = data[1] == '1';
+		int[] pos = { 2 };
+		int cols = readPbmInt(data, pos, file);
+		int rows = readPbmInt(data, pos, file);
+		boolean[] occupied = new boolean[rows * cols];
+
+		if (plain) {
+			for (int i = 0; i < occupied.length; i++) {
+				skipPbmWhitespace(data, pos);
+				if (pos[0] >= data.length)
+					throw new IOException(file + ": truncated bitmap");
+				occupied[i] = data[pos[0]++] == '1';
+			}
+		} else {
+			// a single whitespace byte separates the header from the packed rows
+			int start = pos[0] + 1;
+			int bytesPerRow = (cols + 7) / 8;
+			if (start + rows * bytesPerRow > data.length)
+				throw new IOException(file + ": truncated bitmap");
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					int bits = data[start + row * bytesPerRow + col / 8];
+					occupied[row * cols + col] = (bits & (0x80 >>> (col % 8))) != 0;
+				}
+			}
+		}
+		return createMap(rows, cols, occupied, file);
+	}
+
+	private static GridMap createMap(int rows, int cols, boolean[] occupied, File file) throws IOException {
+		try {
+			return new GridMap(rows, cols, occupied);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(file + ": " + e.getMessage());
+		}
+	}
+
+	private static void skipPbmWhitespace(byte[] data, int[] pos) {
+		while (pos[0] < data.length) {
+			byte b = data[pos[0]];
+			if (b == '#') {
+				while (pos[0] < data.length && data[pos[0]] != '\n') {
+					pos[0]++;
+				}
+			} else if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+				pos[0]++;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static int readPbmInt(byte[] data, int[] pos, File file) throws IOException {
+		skipPbmWhitespace(data, pos);
+		int value = 0;
+		int digits = 0;
+		while (pos[0] < data.length && data[pos[0]] >= '0' && data[pos[0]] <= '9') {
+			value = value * 10 + data[pos[0]++] - '0';
+			digits++;
+		}
+		if (digits == 0)
+			throw new IOException(file + ": malformed PBM header");
+		return value;
+	}
+
+	public int getNumRows() {
+		return rows;
+	}
+
+	public int getNumCols() {
+		return cols;
+	}
+
+	/*
+	 * the number of free cells
+	 */
+	public int getNumCells() {
+		return cellRows.length;
+	}
+
+	public boolean isFree(int row, int col) {
+		return row >= 0 && row < rows && col >= 0 && col < cols && cellIndex[row * cols + col] >= 0;
+	}
+
+	/*
+	 * the dense index of the cell (row, col), -1 if it is occupied or outside the map
+	 */
+	public int getCell(int row, int col) {
+		if (row < 0 || row >= rows || col < 0 || col >= cols)
+			return -1;
+		return cellIndex[row * cols + col];
+	}
+
+	public int getRow(int cell) {
+		return cellRows[cell];
+	}
+
+	public int getCol(int cell) {
+		return cellCols[cell];
+	}
+
+	/*
+	 * the dense index of the first free cell in the given row or, if it has none, in the
+	 * rows below it. getRowStart(rows) is the number of free cells.
+	 */
+	public int getRowStart(int row) {
+		return rowStart[row];
+	}
+
+}
@@ -0,0 +1,77 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Lock free histogram over non negative long values. Values below the number of linear
+ * buckets get a bucket of their own; with exponential set, bucket b holds the values
+ * in [2^(b-1), 2^b) instead. Values beyond the last bucket are counted in the last one.
+ */
+public class Histogram {
+
+	private final AtomicLongArray counts;
+	private final boolean exponential;
+
+	private Histogram(int numBuckets, boolean exponential) {
+		this.counts = new AtomicLongArray(numBuckets);
+		this.exponential = exponential;
+	}
+
+	public static Histogram linear(int numBuckets) {
+		return new Histogram(numBuckets, false);
+	}
+
+	// one bucket per power of two, covers all positive longs
+	public static Histogram exponential() {
+		return new Histogram(64, true);
+	}
+
+	public void record(long value) {
+		int bucket;
+		if (exponential)
+			bucket = 64 - Long.numberOfLeadingZeros(Math.max(0, value));
+		else
+			bucket = (int) Math.max(0, Math.min(value, counts.length() - 1));
+		counts.incrementAndGet(Math.min(bucket, counts.length() - 1));
+	}
+
+	public long[] getCounts() {
+		long[] copy = new long[counts.length()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+		}
+		return copy;
+	}
+
+	/*
+	 * returns the upper bound of the bucket the given quantile (0.0 - 1.0) falls into,
+	 * or 0 if nothing was recorded
+	 */
+	public long getQuantile(double quantile) {
+		long[] copy = getCounts();
+		long total = 0;
+		for (long count : copy) {
+			total += count;
+		}
+		if (total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int bucket = 0; bucket < copy.length; bucket++) {
+			seen += copy[bucket];
+			if (seen >= Math.max(1, rank))
+				return getUpperBound(bucket);
+		}
+		return getUpperBound(copy.length - 1);
+	}
+
+	private long getUpperBound(int bucket) {
+		if (!exponential)
+			return bucket;
+		if (bucket >= 63)
+			return Long.MAX_VALUE;
+		return (1L << bucket) - 1;
+	}
+
+}
@@ -0,0 +1,184 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/*
+ * Counters and histograms about a running localizer. The filter thread records into
+ * lock free accumulators without allocating; any other thread can read them, through
+ * a Snapshot, JMX (registerMBean()) or a periodic SnapshotListener (schedule()).
+ *
+ * Filter steps (latency, entropy of the position estimate) are recorded for every
+ * step, prediction errors only for steps where the true position is known.
+ */
+public class LocalizationMetrics implements LocalizationMetricsMBean {
+
+	public interface SnapshotListener {
+		public void onSnapshot(Snapshot snapshot);
+	}
+
+	private final LongAdder steps = new LongAdder();
+	private final LongAdder stepLatencySum = new LongAdder();
+	private final Histogram stepLatencies = Histogram.exponential();
+	private final DoubleAdder entropySum = new DoubleAdder();
+	private volatile double lastEntropy;
+
+	private final LongAdder scoredSteps = new LongAdder();
+	private final LongAdder numCorrect = new LongAdder();
+	private final LongAdder manhattanSum = new LongAdder();
+	private final DoubleAdder euclideanSum = new DoubleAdder();
+	private final Histogram manhattanDistances = Histogram.linear(64);
+	private volatile int lastManhattanDistance;
+	private volatile double lastEuclideanDistance;
+
+	public void recordStep(long latencyNanos, double entropy) {
+		steps.increment();
+		stepLatencySum.add(latencyNanos);
+		stepLatencies.record(latencyNanos);
+		entropySum.add(entropy);
+		lastEntropy = entropy;
+	}
+
+	public void recordPrediction(int trueRow, int trueCol, int predictionRow, int predictionCol) {
+		int dRow = trueRow - predictionRow;
+		int dCol = trueCol - predictionCol;
+		int manhattan = Math.abs(dRow) + Math.abs(dCol);
+		double euclidean = Math.sqrt(dRow * dRow + dCol * dCol);
+
+		scoredSteps.increment();
+		if (manhattan == 0)
+			numCorrect.increment();
+		manhattanSum.add(manhattan);
+		euclideanSum.add(euclidean);
+		manhattanDistances.record(manhattan);
+		lastManhattanDistance = manhattan;
+		lastEuclideanDistance = euclidean;
+	}
+
+	public Snapshot getSnapshot() {
+		return new Snapshot(this);
+	}
+
+	/*
+	 * calls the listener with a new snapshot every period on the given executor
+	 */
+	public ScheduledFuture<?> schedule(ScheduledExecutorService executor, long period, TimeUnit unit,
+			final SnapshotListener listener) {
+		return executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				listener.onSnapshot(getSnapshot());
+			}
+		}, period, period, unit);
+	}
+
+	/*
+	 * registers the metrics with the platform MBean server, e.g. under
+	 * "model:type=LocalizationMetrics,name=robot1"
+	 */
+	public void registerMBean(String objectName) throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(objectName));
+	}
+
+	public Histogram getStepLatencies() {
+		return stepLatencies;
+	}
+
+	public Histogram getManhattanDistances() {
+		return manhattanDistances;
+	}
+
+	@Override
+	public long getSteps() {
+		return steps.sum();
+	}
+
+	@Override
+	public long getNumCorrect() {
+		return numCorrect.sum();
+	}
+
+	@Override
+	public double getHitRate() {
+		long scored = scoredSteps.sum();
+		return scored == 0 ? 0.0 : (double) numCorrect.sum() / scored;
+	}
+
+	@Override
+	public double getMeanManhattanDistance() {
+		long scored = scoredSteps.sum();
+		return scored == 0 ? 0.0 : (double) manhattanSum.sum() / scored;
+	}
+
+	@Override
+	public double getMeanEuclideanDistance() {
+		long scored = scoredSteps.sum();
+		return scored == 0 ? 0.0 : euclideanSum.sum() / scored;
+	}
+
+	@Override
+	public double getMeanStepLatencyNanos() {
+		long count = steps.sum();
+		return count == 0 ? 0.0 : (double) stepLatencySum.sum() / count;
+	}
+
+	@Override
+	public long getStepLatencyP50Nanos() {
+		return stepLatencies.getQuantile(0.5);
+	}
+
+	@Override
+	public long getStepLatencyP99Nanos() {
+		return stepLatencies.getQuantile(0.99);
+	}
+
+	@Override
+	public double getLastEntropy() {
+		return lastEntropy;
+	}
+
+	@Override
+	public double getMeanEntropy() {
+		long count = steps.sum();
+		return count == 0 ? 0.0 : entropySum.sum() / count;
+	}
+
+	/*
+	 * the values of the metrics at one point in time. Values that are read one after
+	 * the other while the filter keeps running may be off by a step from each other.
+	 */
+	public static class Snapshot {
+
+		public final long steps, scoredSteps, numCorrect;
+		public final double hitRate;
+		public final double meanManhattanDistance, meanEuclideanDistance;
+		public final int lastManhattanDistance;
+		public final double lastEuclideanDistance;
+		public final double meanStepLatencyNanos;
+		public final long stepLatencyP50Nanos, stepLatencyP99Nanos;
+		public final double lastEntropy, meanEntropy;
+
+		private Snapshot(LocalizationMetrics metrics) {
+			steps = metrics.getSteps();
+			scoredSteps = metrics.scoredSteps.sum();
+			numCorrect = metrics.getNumCorrect();
+			hitRate = metrics.getHitRate();
+			meanManhattanDistance = metrics.getMeanManhattanDistance();
+			meanEuclideanDistance = metrics.getMeanEuclideanDistance();
+			lastManhattanDistance = metrics.lastManhattanDistance;
+			lastEuclideanDistance = metrics.lastEuclideanDistance;
+			meanStepLatencyNanos = metrics.getMeanStepLatencyNanos();
+			stepLatencyP50Nanos = metrics.getStepLatencyP50Nanos();
+			stepLatencyP99Nanos = metrics.getStepLatencyP99Nanos();
+			lastEntropy = metrics.getLastEntropy();
+			meanEntropy = metrics.getMeanEntropy();
+		}
+	}
+
+}
@@ -0,0 +1,22 @@
+package model;
+
+/*
+ * JMX view of LocalizationMetrics.
+ */
+public interface LocalizationMetricsMBean {
+
+	public long getSteps();
+	public long getNumCorrect();
+	public double getHitRate();
+
+	public double getMeanManhattanDistance();
+	public double getMeanEuclideanDistance();
+
+	public double getMeanStepLatencyNanos();
+	public long getStepLatencyP50Nanos();
+	public long getStepLatencyP99Nanos();
+
+	public double getLastEntropy();
+	public double getMeanEntropy();
+
+}
@@ -0,0 +1,229 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/*
+ * Directory of precomputed TransitionModel / SensorModel pairs, so a localizer for a
+ * large map starts without rebuilding its models.
+ *
+ * Each pair is stored in its own file, named after the map size, the number of headings
+ * and a hash of the map and the model parameters. The file holds a header (magic,
+ * version, dimensions and parameters) followed by the GridMap state index, the sensor
+ * kernel, the nothing vector and the six transition arrays, all big endian. Loading
+ * maps the file and copies every section into its array in bulk. A file whose header
+ * or state index does not match the request, e.g. after a hash collision or a format
+ * change, is rebuilt and replaced.
+ */
+public class ModelCache {
+
+	public static final int MAGIC = 0x484d4d43; // "HMMC"
+	public static final int VERSION = 1;
+
+	// magic, version, rows, cols, heads, 4 parameters, numCells, numTransitions
+	private static final int HEADER_SIZE = 5 * 4 + 4 * 8 + 2 * 4;
+
+	private final File directory;
+
+	public static class Models {
+		public final TransitionModel transitionModel;
+		public final SensorModel sensorModel;
+
+		Models(TransitionModel transitionModel, SensorModel sensorModel) {
+			this.transitionModel = transitionModel;
+			this.sensorModel = sensorModel;
+		}
+	}
+
+	public ModelCache(File directory) {
+		this.directory = directory;
+	}
+
+	/*
+	 * the models with the default parameters
+	 */
+	public Models load(GridMap map, int heads) throws IOException {
+		return load(map, heads, TransitionModel.DEFAULT_KEEP_HEADING_PROB, SensorModel.DEFAULT_POSITION_PROB,
+				SensorModel.DEFAULT_PRIMARY_RING_PROB, SensorModel.DEFAULT_SECONDARY_RING_PROB);
+	}
+
+	/*
+	 * loads the models from the cache, or builds them and adds them to the cache
+	 */
+	public Models load(GridMap map, int heads, double keepHeadingProb, double positionProb, double primaryRingProb,
+			double secondaryRingProb) throws IOException {
+		double[] params = { keepHeadingProb, positionProb, primaryRingProb, secondaryRingProb };
+		File file = getFile(map, heads, params);
+
+		if (file.isFile()) {
+			Models models = read(file, map, heads, params);
+			if (models != null)
+				return models;
+		}
+
+		Models models = new Models(new TransitionModel(map, heads, keepHeadingProb),
+				new SensorModel(map.getNumRows(), map.getNumCols(), positionProb, primaryRingProb, secondaryRingProb));
+		write(file, models, params);
+		return models;
+	}
+
+	private File getFile(GridMap map, int heads, double[] params) {
+		// 64 bit FNV-1a over the parameters and the state index
+		long hash = 0xcbf29ce484222325L;
+		for (double param : params) {
+			hash = (hash ^ Double.doubleToLongBits(param)) * 0x100000001b3L;
+		}
+		for (int row = 0; row < map.getNumRows(); row++) {
+			for (int col = 0; col < map.getNumCols(); col++) {
+				hash = (hash ^ map.getCell(row, col)) * 0x100000001b3L;
+			}
+		}
+		return new File(directory, String.format("model-%dx%dx%d-%016x.bin", map.getNumRows(), map.getNumCols(), heads, hash));
+	}
+
+	// returns null if the file does not hold the requested models
+	private Models read(File file, GridMap map, int heads, double[] params) throws IOException {
+		int rows = map.getNumRows();
+		int cols = map.getNumCols();
+
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			FileChannel channel = in.getChannel();
+			if (channel.size() < HEADER_SIZE)
+				return null;
+
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION)
+				return null;
+			if (header.getInt() != rows || header.getInt() != cols || header.getInt() != heads)
+				return null;
+			for (double param : params) {
+				if (Double.doubleToLongBits(header.getDouble()) != Double.doubleToLongBits(param))
+					return null;
+			}
+			int numCells = header.getInt();
+			int numTransitions = header.getInt();
+			if (numCells != map.getNumCells())
+				return null;
+
+			int numStates = numCells * heads;
+			long size = HEADER_SIZE + 4L * rows * cols + 8L * SensorModel.KERNEL_SIZE * SensorModel.KERNEL_SIZE
+					+ 8L * rows * cols + 2 * (4L * (numStates + 1) + 12L * numTransitions);
+			if (channel.size() != size)
+				return null;
+
+			long offset = HEADER_SIZE;
+			int[] cellIndex = new int[rows * cols];
+			offset = readInts(channel, offset, cellIndex);
+			for (int row = 0; row < rows; row++) {
+				for (int col = 0; col < cols; col++) {
+					if (cellIndex[row * cols + col] != map.getCell(row, col))
+						return null;
+				}
+			}
+
+			double[] kernel = new double[SensorModel.KERNEL_SIZE * SensorModel.KERNEL_SIZE];
+			double[] nothingProbs = new double[rows * cols];
+			offset = readDoubles(channel, offset, kernel);
+			offset = readDoubles(channel, offset, nothingProbs);
+
+			int[] successorStart = new int[numStates + 1];
+			int[] successors = new int[numTransitions];
+			double[] successorProbs = new double[numTransitions];
+			int[] predecessorStart = new int[numStates + 1];
+			int[] predecessors = new int[numTransitions];
+			double[] predecessorProbs = new double[numTransitions];
+			offset = readInts(channel, offset, successorStart);
+			offset = readInts(channel, offset, successors);
+			offset = readDoubles(channel, offset, successorProbs);
+			offset = readInts(channel, offset, predecessorStart);
+			offset = readInts(channel, offset, predecessors);
+			readDoubles(channel, offset, predecessorProbs);
+
+			return new Models(
+					new TransitionModel(map, heads, params[0], successorStart, successors, successorProbs,
+							predecessorStart, predecessors, predecessorProbs),
+					new SensorModel(rows, cols, params[1], params[2], params[3], kernel, nothingProbs));
+		}
+	}
+
+	private static long readInts(FileChannel channel, long offset, int[] values) throws IOException {
+		long size = 4L * values.length;
+		if (size > 0)
+			channel.map(FileChannel.MapMode.READ_ONLY, offset, size).asIntBuffer().get(values);
+		return offset + size;
+	}
+
+	private static long readDoubles(FileChannel channel, long offset, double[] values) throws IOException {
+		long size = 8L * values.length;
+		if (size > 0)
+			channel.map(FileChannel.MapMode.READ_ONLY, offset, size).asDoubleBuffer().get(values);
+		return offset + size;
+	}
+
+	/*
+	 * writes to a temporary file first and moves it into place, so a concurrently
+	 * starting localizer never maps a half written file
+	 */
+	private void write(File file, Models models, double[] params) throws IOException {
+		TransitionModel transitionModel = models.transitionModel;
+		SensorModel sensorModel = models.sensorModel;
+		GridMap map = transitionModel.getGridMap();
+
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Cannot create model cache directory " + directory);
+		File tmp = File.createTempFile("model", ".tmp", directory);
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(map.getNumRows());
+				out.writeInt(map.getNumCols());
+				out.writeInt(transitionModel.getNumHead());
+				for (double param : params) {
+					out.writeDouble(param);
+				}
+				out.writeInt(map.getNumCells());
+				out.writeInt(transitionModel.getSuccessors().length);
+
+				for (int row = 0; row < map.getNumRows(); row++) {
+					for (int col = 0; col < map.getNumCols(); col++) {
+						out.writeInt(map.getCell(row, col));
+					}
+				}
+				writeDoubles(out, sensorModel.getKernel());
+				writeDoubles(out, sensorModel.getNothingProbs());
+				writeInts(out, transitionModel.getSuccessorStart());
+				writeInts(out, transitionModel.getSuccessors());
+				writeDoubles(out, transitionModel.getSuccessorProbs());
+				writeInts(out, transitionModel.getPredecessorStart());
+				writeInts(out, transitionModel.getPredecessors());
+				writeDoubles(out, transitionModel.getPredecessorProbs());
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		for (double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+package model;
+
+import java.util.Arrays;
+
+/*
+ * Online EM for the free parameters of the models: the probability to keep the heading
+ * and the three sensor ring probabilities. Fed by HMMLocalizer with the forward
+ * messages of every step, it keeps a handful of decayed expected counts, so its memory
+ * does not grow with the number of steps, and every refitInterval steps the localizer
+ * rebuilds its models from getKeepHeadingProb() etc.
+ *
+ * Transitions: with the belief a before a step, the reading y and the new belief, the
+ * one step smoother gives P(x(t-1) = i, x(t) = j | y(1..t)) ~ a(i) T(i, j) O(y | j).
+ * Summed over the states that had a choice (the current heading and at least one other
+ * are open), this is the expected number of choices, and over the successors that keep
+ * the heading, the expected number of kept headings. Their ratio is the M step.
+ *
+ * Readings: with the filtered position marginal g after the step, the expected number
+ * of readings in ring r (0 = the position itself) is the mass of g at Chebyshev
+ * distance r from the reading, and the expected number of cells in ring r on the grid
+ * is sum over cells of g(cell) times the number of ring r cells around it. The ring
+ * probability is their ratio, which also accounts for the rings cut at the walls.
+ *
+ * All counts are multiplied by decay every step, so the estimates follow parameters
+ * that drift, and start as priorWeight steps worth of counts at the initial parameters.
+ */
+public class OnlineParameterLearner {
+
+	public static final int DEFAULT_REFIT_INTERVAL = 200;
+	public static final double DEFAULT_DECAY = 0.999;
+	public static final double DEFAULT_PRIOR_WEIGHT = 50.0;
+
+	// ring cells of an interior position
+	private static final int[] RING_SIZES = new int[] { 1, 8, 16 };
+
+	private final int refitInterval;
+	private final double decay;
+	private int stepsSinceRefit;
+
+	private double choices, keptHeadings;
+	private final double[] ringReadings = new double[RING_SIZES.length];
+	private final double[] ringCells = new double[RING_SIZES.length];
+	private final double[] stepCells = new double[RING_SIZES.length];
+
+	// O(y | cell) of the current reading, reused every step
+	private double[] readingProbs;
+
+	public OnlineParameterLearner(TransitionModel transitionModel, SensorModel sensorModel) {
+		this(transitionModel, sensorModel, DEFAULT_REFIT_INTERVAL, DEFAULT_DECAY, DEFAULT_PRIOR_WEIGHT);
+	}
+
+	public OnlineParameterLearner(TransitionModel transitionModel, SensorModel sensorModel, int refitInterval,
+			double decay, double priorWeight) {
+		this.refitInterval = refitInterval;
+		this.decay = decay;
+
+		choices = priorWeight;
+		keptHeadings = priorWeight * transitionModel.getKeepHeadingProb();
+		double[] ringProbs = { sensorModel.getPositionProb(), sensorModel.getPrimaryRingProb(),
+				sensorModel.getSecondaryRingProb() };
+		for (int r = 0; r < RING_SIZES.length; r++) {
+			ringCells[r] = priorWeight * RING_SIZES[r];
+			ringReadings[r] = ringCells[r] * ringProbs[r];
+		}
+	}
+
+	/*
+	 * accumulates the expected transition counts of the step from belief to the reading,
+	 * before the filter takes that step
+	 */
+	void addTransitions(TransitionModel transitionModel, SensorModel sensorModel, double[] belief, int reading) {
+		GridMap map = transitionModel.getGridMap();
+		int heads = transitionModel.getNumHead();
+		int[] successorStart = transitionModel.getSuccessorStart();
+		int[] successors = transitionModel.getSuccessors();
+		double[] successorProbs = transitionModel.getSuccessorProbs();
+
+		if (readingProbs == null || readingProbs.length != map.getNumCells())
+			readingProbs = new double[map.getNumCells()];
+		for (int cell = 0; cell < readingProbs.length; cell++) {
+			readingProbs[cell] = sensorModel.getProb(reading, map.getRow(cell), map.getCol(cell));
+		}
+
+		double normalizer = 0.0, stepChoices = 0.0, stepKept = 0.0;
+		for (int i = 0; i < belief.length; i++) {
+			if (belief[i] == 0.0)
+				continue;
+
+			int head = i % heads;
+			double sum = 0.0, kept = 0.0;
+			boolean canKeepHeading = false;
+			for (int k = successorStart[i]; k < successorStart[i + 1]; k++) {
+				int j = successors[k];
+				double prob = successorProbs[k] * readingProbs[j / heads];
+				sum += prob;
+				if (j % heads == head && j != i) {
+					canKeepHeading = true;
+					kept = prob;
+				}
+			}
+			normalizer += belief[i] * sum;
+			if (canKeepHeading && successorStart[i + 1] - successorStart[i] > 1) {
+				stepChoices += belief[i] * sum;
+				stepKept += belief[i] * kept;
+			}
+		}
+		if (normalizer <= 0.0)
+			return;
+
+		choices = decay * choices + stepChoices / normalizer;
+		keptHeadings = decay * keptHeadings + stepKept / normalizer;
+	}
+
+	/*
+	 * accumulates the expected reading counts given the position marginal after the
+	 * filter took the step with the reading
+	 */
+	void addReading(SensorModel sensorModel, GridMap map, double[] marginal, int reading) {
+		int rows = map.getNumRows();
+		int cols = map.getNumCols();
+
+		Arrays.fill(stepCells, 0.0);
+		for (int cell = 0; cell < marginal.length; cell++) {
+			double prob = marginal[cell];
+			if (prob == 0.0)
+				continue;
+			int row = map.getRow(cell);
+			int col = map.getCol(cell);
+			int inner = 0;
+			for (int r = 0; r < RING_SIZES.length; r++) {
+				int box = (Math.min(row + r, rows - 1) - Math.max(row - r, 0) + 1)
+						* (Math.min(col + r, cols - 1) - Math.max(col - r, 0) + 1);
+				stepCells[r] += prob * (box - inner);
+				inner = box;
+			}
+		}
+
+		for (int r = 0; r < RING_SIZES.length; r++) {
+			ringCells[r] = decay * ringCells[r] + stepCells[r];
+			ringReadings[r] *= decay;
+		}
+
+		if (reading != sensorModel.getNothingReading()) {
+			int readingRow = reading / cols;
+			int readingCol = reading % cols;
+			int radius = RING_SIZES.length - 1;
+			for (int row = Math.max(0, readingRow - radius); row <= Math.min(rows - 1, readingRow + radius); row++) {
+				for (int col = Math.max(0, readingCol - radius); col <= Math.min(cols - 1, readingCol + radius); col++) {
+					int cell = map.getCell(row, col);
+					if (cell >= 0)
+						ringReadings[Math.max(Math.abs(row - readingRow), Math.abs(col - readingCol))] += marginal[cell];
+				}
+			}
+		}
+
+		stepsSinceRefit++;
+	}
+
+	/*
+	 * true once every refitInterval steps; the caller refits and calls refitDone()
+	 */
+	boolean isRefitDue() {
+		return stepsSinceRefit >= refitInterval;
+	}
+
+	void refitDone() {
+		stepsSinceRefit = 0;
+	}
+
+	public double getKeepHeadingProb() {
+		if (choices <= 0.0)
+			return TransitionModel.DEFAULT_KEEP_HEADING_PROB;
+		return Math.min(1.0, keptHeadings / choices);
+	}
+
+	public double getPositionProb() {
+		return getRingProb(0);
+	}
+
+	public double getPrimaryRingProb() {
+		return getRingProb(1);
+	}
+
+	public double getSecondaryRingProb() {
+		return getRingProb(2);
+	}
+
+	// scaled down if the rings of an interior position would add up to more than 1
+	private double getRingProb(int ring) {
+		double total = 0.0;
+		for (int r = 0; r < RING_SIZES.length; r++) {
+			total += RING_SIZES[r] * ringReadings[r] / ringCells[r];
+		}
+		double prob = ringReadings[ring] / ringCells[ring];
+		return total > 1.0 ? prob / total : prob;
+	}
+
+}
@@ -0,0 +1,355 @@
+package model;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import control.EstimatorInterface;
+
+/*
+ * Particle filter over the same TransitionModel and SensorModel as HMMLocalizer. The
+ * belief is approximated by a fixed number of particles, so a step costs O(number of
+ * particles) however large the map is.
+ *
+ * Each particle is a TransitionModel state in an int[]. A step moves every particle
+ * by sampling its successor, weights it by the SensorModel probability of the reading
+ * and draws the next generation by systematic resampling. If no particle explains the
+ * reading the particles are spread uniformly over the map again.
+ */
+public class ParticleLocalizer implements EstimatorInterface, SnapshotSource {
+
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 15;
+
+	private final int rows, cols, heads;
+	private final int numParticles;
+	private final TransitionModel transitionModel;
+	private final SensorModel sensorModel;
+	private final GridMap map;
+	private final SplittableRandom random;
+
+	private int[] particles;
+	private int[] nextParticles;
+	private final double[] weights;
+
+	// number of particles per cell and the cell with the most of them
+	private final int[] cellCounts;
+	private int predictedCell;
+
+	// entropy of the particle histogram; countedSteps[cell] == entropySteps once the cell is summed
+	private double entropy;
+	private final int[] countedSteps;
+	private int entropySteps;
+
+	// created on first use, so localizers that are only fed readings never build one
+	private Simulator simulator;
+	private int currentReading;
+	private final LocalizationMetrics metrics;
+
+	private long version;
+	private boolean publishing;
+	private final AtomicReference<BeliefSnapshot> snapshot = new AtomicReference<BeliefSnapshot>();
+
+	private ForkJoinPool pool;
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+	public ParticleLocalizer(int rows, int cols, int heads, int numParticles) {
+		this(new TransitionModel(rows, cols, heads), new SensorModel(rows, cols), numParticles, new SplittableRandom());
+	}
+
+	public ParticleLocalizer(TransitionModel transitionModel, SensorModel sensorModel, int numParticles,
+			SplittableRandom random) {
+		this.transitionModel = transitionModel;
+		this.sensorModel = sensorModel;
+		this.map = transitionModel.getGridMap();
+		this.rows = transitionModel.getNumRows();
+		this.cols = transitionModel.getNumCols();
+		this.heads = transitionModel.getNumHead();
+		this.numParticles = numParticles;
+		this.random = random;
+
+		particles = new int[numParticles];
+		nextParticles = new int[numParticles];
+		weights = new double[numParticles];
+		cellCounts = new int[map.getNumCells()];
+		countedSteps = new int[map.getNumCells()];
+		metrics = new LocalizationMetrics();
+
+		currentReading = sensorModel.getNothingReading();
+		spreadUniformly();
+		updateEntropy();
+	}
+
+	/*
+	 * computes the particle weights on the given pool when there are at least
+	 * parallelThreshold particles. A null pool turns this off.
+	 */
+	public void setParallelism(ForkJoinPool pool, int parallelThreshold) {
+		this.pool = pool;
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	public void setSimulator(Simulator simulator) {
+		this.simulator = simulator;
+	}
+
+	private Simulator getSimulator() {
+		if (simulator == null)
+			simulator = new RobotSimulator(transitionModel, sensorModel, random.split());
+		return simulator;
+	}
+
+	public LocalizationMetrics getMetrics() {
+		return metrics;
+	}
+
+	// expects the particles not to be counted in cellCounts
+	private void spreadUniformly() {
+		int numStates = transitionModel.getNumStates();
+		for (int p = 0; p < numParticles; p++) {
+			particles[p] = random.nextInt(numStates);
+		}
+		countParticles();
+	}
+
+	// only touches the cells of the particles, not the whole map
+	private void uncountParticles() {
+		for (int p = 0; p < numParticles; p++) {
+			cellCounts[particles[p] / heads]--;
+		}
+	}
+
+	private void countParticles() {
+		predictedCell = particles[0] / heads;
+		for (int p = 0; p < numParticles; p++) {
+			int cell = particles[p] / heads;
+			if (++cellCounts[cell] > cellCounts[predictedCell])
+				predictedCell = cell;
+		}
+	}
+
+	@Override
+	public void update() {
+		Simulator simulator = getSimulator();
+		simulator.step();
+		observe(simulator.getReading());
+
+		metrics.recordPrediction(simulator.getRow(), simulator.getCol(), getPredictionRow(), getPredictionCol());
+	}
+
+	/*
+	 * advances the particles one step with the reading that has the given SensorModel index
+	 * from 0 to getNothingReading(). Any other index, e.g. the -1 the viewer uses for
+	 * nothing, throws an IllegalArgumentException and leaves the belief as it is.
+	 */
+	public void observe(int readingIndex) {
+		if (readingIndex < 0 || readingIndex > sensorModel.getNothingReading())
+			throw new IllegalArgumentException("Reading index " + readingIndex + " outside 0.."
+					+ sensorModel.getNothingReading());
+		long start = System.nanoTime();
+		currentReading = readingIndex;
+
+		uncountParticles();
+		move();
+		double sum;
+		if (pool != null && numParticles >= parallelThreshold)
+			sum = pool.invoke(new WeightTask(readingIndex, 0, numParticles,
+					Math.max(1024, numParticles / (4 * pool.getParallelism()))));
+		else
+			sum = weigh(readingIndex, 0, numParticles);
+
+		if (sum == 0.0)
+			spreadUniformly();
+		else
+			resample(sum);
+		updateEntropy();
+
+		version++;
+		if (publishing)
+			publishSnapshot();
+
+		metrics.recordStep(System.nanoTime() - start, entropy);
+	}
+
+	/*
+	 * the entropy of the particle histogram in bits, summed over the occupied cells only,
+	 * which are found through the particles, so it costs O(number of particles)
+	 */
+	private void updateEntropy() {
+		entropySteps++;
+		double sum = 0.0;
+		for (int p = 0; p < numParticles; p++) {
+			int cell = particles[p] / heads;
+			if (countedSteps[cell] == entropySteps)
+				continue;
+			countedSteps[cell] = entropySteps;
+			double prob = (double) cellCounts[cell] / numParticles;
+			sum -= prob * Math.log(prob);
+		}
+		entropy = sum / Math.log(2.0);
+	}
+
+	@Override
+	public void setSnapshotPublishing(boolean publishing) {
+		this.publishing = publishing;
+		if (publishing)
+			publishSnapshot();
+	}
+
+	@Override
+	public BeliefSnapshot getSnapshot() {
+		return snapshot.get();
+	}
+
+	// a localizer only fed through observe() has no true pose and does not get a simulator for one
+	private void publishSnapshot() {
+		double[] marginal = new double[cellCounts.length];
+		for (int cell = 0; cell < marginal.length; cell++) {
+			marginal[cell] = (double) cellCounts[cell] / numParticles;
+		}
+
+		int[] trueState = simulator == null ? null : getCurrentTrueState();
+		snapshot.set(new BeliefSnapshot(version, map, marginal, trueState, getCurrentReading(),
+				getPredictionRow(), getPredictionCol(), getPredictionProb(), entropy));
+	}
+
+	private void move() {
+		int[] successorStart = transitionModel.getSuccessorStart();
+		int[] successors = transitionModel.getSuccessors();
+		double[] successorProbs = transitionModel.getSuccessorProbs();
+
+		for (int p = 0; p < numParticles; p++) {
+			int state = particles[p];
+			double randNum = random.nextDouble();
+			int k = successorStart[state];
+			int last = successorStart[state + 1] - 1;
+			while (k < last && randNum >= successorProbs[k]) {
+				randNum -= successorProbs[k];
+				k++;
+			}
+			particles[p] = successors[k];
+		}
+	}
+
+	private double weigh(int reading, int start, int end) {
+		double sum = 0.0;
+		for (int p = start; p < end; p++) {
+			int cell = particles[p] / heads;
+			double weight = sensorModel.getProb(reading, map.getRow(cell), map.getCol(cell));
+			weights[p] = weight;
+			sum += weight;
+		}
+		return sum;
+	}
+
+	/*
+	 * systematic resampling: one random offset, then numParticles evenly spaced pointers
+	 * into the cumulative weights
+	 */
+	private void resample(double sum) {
+		double step = sum / numParticles;
+		double pointer = random.nextDouble() * step;
+		double cumulative = weights[0];
+		int p = 0;
+		for (int m = 0; m < numParticles; m++) {
+			while (cumulative < pointer && p < numParticles - 1) {
+				p++;
+				cumulative += weights[p];
+			}
+			nextParticles[m] = particles[p];
+			pointer += step;
+		}
+
+		int[] tmp = particles;
+		particles = nextParticles;
+		nextParticles = tmp;
+		countParticles();
+	}
+
+	private class WeightTask extends RecursiveTask<Double> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int reading, start, end, grain;
+
+		WeightTask(int reading, int start, int end, int grain) {
+			this.reading = reading;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected Double compute() {
+			if (end - start <= grain)
+				return weigh(reading, start, end);
+
+			int mid = (start + end) >>> 1;
+			WeightTask lower = new WeightTask(reading, start, mid, grain);
+			lower.fork();
+			double upperSum = new WeightTask(reading, mid, end, grain).compute();
+			return lower.join() + upperSum;
+		}
+	}
+
+	public int getPredictionRow() {
+		return map.getRow(predictedCell);
+	}
+
+	public int getPredictionCol() {
+		return map.getCol(predictedCell);
+	}
+
+	public double getPredictionProb() {
+		return (double) cellCounts[predictedCell] / numParticles;
+	}
+
+	@Override
+	public int getNumRows() {
+		return rows;
+	}
+
+	@Override
+	public int getNumCols() {
+		return cols;
+	}
+
+	@Override
+	public int getNumHead() {
+		return heads;
+	}
+
+	@Override
+	public int[] getCurrentTrueState() {
+		Simulator simulator = getSimulator();
+		return new int[] { simulator.getRow(), simulator.getCol(), simulator.getHeading() };
+	}
+
+	@Override
+	public int[] getCurrentReading() {
+		if (currentReading == sensorModel.getNothingReading())
+			return null;
+		return new int[] { currentReading / cols, currentReading % cols };
+	}
+
+	@Override
+	public double getCurrentProb(int x, int y) {
+		if (!map.isFree(x, y))
+			return 0.0;
+		return (double) cellCounts[map.getCell(x, y)] / numParticles;
+	}
+
+	@Override
+	public double getOrXY(int rX, int rY, int x, int y, int h) {
+		if (rX == -1 && rY == -1)
+			return sensorModel.getNothingProb(x, y);
+
+		return sensorModel.getKernelProb(rX - x, rY - y);
+	}
+
+	@Override
+	public double getTProb(int x, int y, int h, int nX, int nY, int nH) {
+		return transitionModel.getProb(x, y, h, nX, nY, nH);
+	}
+
+}
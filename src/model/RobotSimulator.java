@@ -0,0 +1,138 @@
+package model;
+
+import java.util.SplittableRandom;
+
+/*
+ * Simulates the robot according to the same TransitionModel and SensorModel that the
+ * filter uses. The robot starts in the first free cell of the map, (0, 0) on a map
+ * without obstacles, with a random heading.
+ *
+ * Moves and readings are drawn from alias tables built once in the constructor, so a
+ * step costs two random numbers and a few array reads and does not allocate. All
+ * randomness comes from one SplittableRandom: the same seed gives the same run.
+ */
+public class RobotSimulator implements Simulator {
+
+	// reading outcomes: the kernel offsets, then "nothing"
+	private static final int NUM_OFFSETS = SensorModel.KERNEL_SIZE * SensorModel.KERNEL_SIZE;
+
+	private final SensorModel sensorModel;
+	private final SplittableRandom random;
+	private final GridMap map;
+	private final int rows, cols, heads;
+
+	// alias tables of the successors of every state, laid out like the successor lists
+	private final int[] successorStart;
+	private final double[] moveAliasProbs;
+	private final int[] moveAliases;
+	private final int[] successors;
+
+	// one alias table over the reading offsets, which do not depend on the position
+	private final double[] readingAliasProbs;
+	private final int[] readingAliases;
+
+	private int state;
+	private int row, col, heading;
+	private int reading;
+
+	public RobotSimulator(TransitionModel transitionModel, SensorModel sensorModel, SplittableRandom random) {
+		this.sensorModel = sensorModel;
+		this.random = random;
+		this.map = transitionModel.getGridMap();
+		this.rows = sensorModel.getNumRows();
+		this.cols = sensorModel.getNumCols();
+		this.heads = transitionModel.getNumHead();
+
+		successorStart = transitionModel.getSuccessorStart();
+		successors = transitionModel.getSuccessors();
+		double[] successorProbs = transitionModel.getSuccessorProbs();
+		moveAliasProbs = new double[successors.length];
+		moveAliases = new int[successors.length];
+
+		AliasTable table = new AliasTable(Math.max(4, NUM_OFFSETS + 1));
+		for (int i = 0; i < transitionModel.getNumStates(); i++) {
+			int start = successorStart[i];
+			table.build(successorProbs, start, successorStart[i + 1] - start, moveAliasProbs, moveAliases);
+			for (int k = start; k < successorStart[i + 1]; k++) {
+				moveAliases[k] = successors[start + moveAliases[k]];
+			}
+		}
+
+		double[] readingProbs = new double[NUM_OFFSETS + 1];
+		double nothingProb = 1.0;
+		for (int o = 0; o < NUM_OFFSETS; o++) {
+			readingProbs[o] = sensorModel.getKernelProb(o / SensorModel.KERNEL_SIZE - SensorModel.KERNEL_RADIUS,
+					o % SensorModel.KERNEL_SIZE - SensorModel.KERNEL_RADIUS);
+			nothingProb -= readingProbs[o];
+		}
+		readingProbs[NUM_OFFSETS] = Math.max(0.0, nothingProb);
+		readingAliasProbs = new double[readingProbs.length];
+		readingAliases = new int[readingProbs.length];
+		table.build(readingProbs, 0, readingProbs.length, readingAliasProbs, readingAliases);
+
+		heading = random.nextInt(heads);
+		state = transitionModel.getIndex(map.getRow(0), map.getCol(0), heading);
+		updatePose();
+		reading = sensorModel.getNothingReading();
+	}
+
+	@Override
+	public void step() {
+		updateHeadingAndPosition();
+		updateReading();
+	}
+
+	private void updateHeadingAndPosition() {
+		int start = successorStart[state];
+		double u = random.nextDouble() * (successorStart[state + 1] - start);
+		int slot = (int) u;
+		int k = start + slot;
+		state = u - slot < moveAliasProbs[k] ? successors[k] : moveAliases[k];
+		updatePose();
+	}
+
+	private void updatePose() {
+		heading = state % heads;
+		row = map.getRow(state / heads);
+		col = map.getCol(state / heads);
+	}
+
+	/*
+	 * draws a reading around the true position according to the SensorModel kernel;
+	 * whatever mass is left, or falls outside the grid, is "nothing"
+	 */
+	private void updateReading() {
+		double u = random.nextDouble() * readingAliasProbs.length;
+		int slot = (int) u;
+		int outcome = u - slot < readingAliasProbs[slot] ? slot : readingAliases[slot];
+
+		reading = sensorModel.getNothingReading();
+		if (outcome < NUM_OFFSETS) {
+			int readingRow = row + outcome / SensorModel.KERNEL_SIZE - SensorModel.KERNEL_RADIUS;
+			int readingCol = col + outcome % SensorModel.KERNEL_SIZE - SensorModel.KERNEL_RADIUS;
+			if (readingRow >= 0 && readingRow < rows && readingCol >= 0 && readingCol < cols)
+				reading = sensorModel.getReadingIndex(readingRow, readingCol);
+		}
+	}
+
+	@Override
+	public int getRow() {
+		return row;
+	}
+
+	@Override
+	public int getCol() {
+		return col;
+	}
+
+	@Override
+	public int getHeading() {
+		return heading;
+	}
+
+	@Override
+	public int getReading() {
+		return reading;
+	}
+
+}
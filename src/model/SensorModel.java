@@ -0,0 +1,153 @@
+package model;
+
+/*
+ * Sensor model for a rows x cols grid. A reading is either a position (row, col),
+ * with reading index row * cols + col, or "nothing", with reading index rows * cols.
+ *
+ * The probability of reading r in position (x, y) only depends on the offset between
+ * the two positions as long as r is a position, so it is stored as a 5 x 5 kernel over
+ * the offsets (0.1 for the position itself, 0.05 for the primary ring, 0.025 for the
+ * secondary ring). Only the probability of "nothing" depends on where the robot is
+ * (the rings are cut at the walls) and it is stored per position.
+ */
+public class SensorModel {
+
+	public static final double DEFAULT_POSITION_PROB = 0.1;
+	public static final double DEFAULT_PRIMARY_RING_PROB = 0.05;
+	public static final double DEFAULT_SECONDARY_RING_PROB = 0.025;
+
+	static final int KERNEL_RADIUS = 2;
+	static final int KERNEL_SIZE = 2 * KERNEL_RADIUS + 1;
+
+	private final int rows, cols;
+	private final double positionProb, primaryRingProb, secondaryRingProb;
+
+	// kernel[(dRow + 2) * 5 + (dCol + 2)] for an offset reading - position
+	private final double[] kernel;
+	private final double[] nothingProbs;
+
+	public SensorModel(int rows, int cols) {
+		this(rows, cols, DEFAULT_POSITION_PROB, DEFAULT_PRIMARY_RING_PROB, DEFAULT_SECONDARY_RING_PROB);
+	}
+
+	public SensorModel(int rows, int cols, double positionProb, double primaryRingProb, double secondaryRingProb) {
+		this.rows = rows;
+		this.cols = cols;
+		this.positionProb = positionProb;
+		this.primaryRingProb = primaryRingProb;
+		this.secondaryRingProb = secondaryRingProb;
+
+		kernel = new double[KERNEL_SIZE * KERNEL_SIZE];
+		for (int dRow = -KERNEL_RADIUS; dRow <= KERNEL_RADIUS; dRow++) {
+			for (int dCol = -KERNEL_RADIUS; dCol <= KERNEL_RADIUS; dCol++) {
+				kernel[(dRow + KERNEL_RADIUS) * KERNEL_SIZE + dCol + KERNEL_RADIUS] = getRingProb(
+						Math.max(Math.abs(dRow), Math.abs(dCol)));
+			}
+		}
+
+		nothingProbs = new double[rows * cols];
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				double prob = 1.0;
+				for (int dRow = -KERNEL_RADIUS; dRow <= KERNEL_RADIUS; dRow++) {
+					for (int dCol = -KERNEL_RADIUS; dCol <= KERNEL_RADIUS; dCol++) {
+						if (inBounds(row + dRow, col + dCol))
+							prob -= getKernelProb(dRow, dCol);
+					}
+				}
+				nothingProbs[row * cols + col] = prob;
+			}
+		}
+	}
+
+	/*
+	 * a model from an already built kernel and nothing vector, see ModelCache
+	 */
+	SensorModel(int rows, int cols, double positionProb, double primaryRingProb, double secondaryRingProb,
+			double[] kernel, double[] nothingProbs) {
+		this.rows = rows;
+		this.cols = cols;
+		this.positionProb = positionProb;
+		this.primaryRingProb = primaryRingProb;
+		this.secondaryRingProb = secondaryRingProb;
+		this.kernel = kernel;
+		this.nothingProbs = nothingProbs;
+	}
+
+	private double getRingProb(int ring) {
+		if (ring == 0)
+			return positionProb;
+		if (ring == 1)
+			return primaryRingProb;
+		if (ring == 2)
+			return secondaryRingProb;
+		return 0.0;
+	}
+
+	private boolean inBounds(int row, int col) {
+		return row >= 0 && row < rows && col >= 0 && col < cols;
+	}
+
+	public int getNumReadings() {
+		return rows * cols + 1;
+	}
+
+	public int getNothingReading() {
+		return rows * cols;
+	}
+
+	public int getReadingIndex(int row, int col) {
+		return row * cols + col;
+	}
+
+	/*
+	 * returns the probability of the reading with offset (dRow, dCol) from the true position
+	 */
+	public double getKernelProb(int dRow, int dCol) {
+		if (dRow < -KERNEL_RADIUS || dRow > KERNEL_RADIUS || dCol < -KERNEL_RADIUS || dCol > KERNEL_RADIUS)
+			return 0.0;
+		return kernel[(dRow + KERNEL_RADIUS) * KERNEL_SIZE + dCol + KERNEL_RADIUS];
+	}
+
+	public double getNothingProb(int row, int col) {
+		return nothingProbs[row * cols + col];
+	}
+
+	/*
+	 * returns the probability of getting the reading with the given index when in (row, col)
+	 */
+	public double getProb(int reading, int row, int col) {
+		if (reading == rows * cols)
+			return nothingProbs[row * cols + col];
+		return getKernelProb(reading / cols - row, reading % cols - col);
+	}
+
+	public int getNumRows() {
+		return rows;
+	}
+
+	public int getNumCols() {
+		return cols;
+	}
+
+	public double getPositionProb() {
+		return positionProb;
+	}
+
+	public double getPrimaryRingProb() {
+		return primaryRingProb;
+	}
+
+	public double getSecondaryRingProb() {
+		return secondaryRingProb;
+	}
+
+	double[] getKernel() {
+		return kernel;
+	}
+
+	double[] getNothingProbs() {
+		return nothingProbs;
+	}
+
+}
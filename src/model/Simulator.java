@@ -0,0 +1,27 @@
+package model;
+
+/*
+ * Source of the true robot pose and of the sensor readings that HMMLocalizer.update()
+ * feeds to the filter. Replace it to drive the localizer from something else than
+ * the built in RobotSimulator, e.g. a recorded run.
+ */
+public interface Simulator {
+
+	/*
+	 * moves the robot one step and takes a new sensor reading at the new position
+	 */
+	public void step();
+
+	/*
+	 * the current true pose of the robot
+	 */
+	public int getRow();
+	public int getCol();
+	public int getHeading();
+
+	/*
+	 * the SensorModel index of the reading taken in the last step
+	 */
+	public int getReading();
+
+}
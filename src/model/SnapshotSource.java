@@ -0,0 +1,21 @@
+package model;
+
+/*
+ * A localizer that publishes a BeliefSnapshot after every step. Publishing allocates
+ * a copy of the marginal per step, so it is off until turned on.
+ */
+public interface SnapshotSource {
+
+	/*
+	 * turns publishing on or off; turning it on publishes the current state right away.
+	 * Has to be called from the thread that steps the localizer.
+	 */
+	public void setSnapshotPublishing(boolean publishing);
+
+	/*
+	 * the latest published snapshot, null if none has been published yet. Safe to call
+	 * from any thread at any time, it never blocks.
+	 */
+	public BeliefSnapshot getSnapshot();
+
+}
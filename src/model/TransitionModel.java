@@ -0,0 +1,254 @@
+package model;
+
+/*
+ * Sparse transition model for the robot moving on the free cells of a GridMap with four
+ * headings. A state i = <row, col, head> is stored at index cell * heads + head, cell
+ * being the dense GridMap index of (row, col), so occupied cells have no states. The
+ * robot cannot move into an occupied cell or off the map, and stays put if it is walled
+ * in on all sides.
+ *
+ * Every state has at most four successors (one per possible new heading, each one
+ * step away), so instead of a dense S x S matrix the model keeps the transitions in
+ * compressed sparse row form (successors of a state) and compressed sparse column
+ * form (predecessors of a state). Both are built in O(S).
+ */
+public class TransitionModel {
+
+	// North, East, South, West
+	static final int[][] HEADINGS = new int[][] { { -1, 0 }, { 0, 1 }, { 1, 0 }, { 0, -1 } };
+
+	public static final double DEFAULT_KEEP_HEADING_PROB = 0.7;
+
+	private final GridMap map;
+	private final int rows, cols, heads;
+	private final double keepHeadingProb;
+
+	// successors of state i are successors[successorStart[i] .. successorStart[i + 1] - 1]
+	private final int[] successorStart;
+	private final int[] successors;
+	private final double[] successorProbs;
+
+	// predecessors of state j are predecessors[predecessorStart[j] .. predecessorStart[j + 1] - 1]
+	private final int[] predecessorStart;
+	private final int[] predecessors;
+	private final double[] predecessorProbs;
+
+	public TransitionModel(int rows, int cols, int heads) {
+		this(rows, cols, heads, DEFAULT_KEEP_HEADING_PROB);
+	}
+
+	public TransitionModel(int rows, int cols, int heads, double keepHeadingProb) {
+		this(GridMap.empty(rows, cols), heads, keepHeadingProb);
+	}
+
+	public TransitionModel(GridMap map, int heads) {
+		this(map, heads, DEFAULT_KEEP_HEADING_PROB);
+	}
+
+	public TransitionModel(GridMap map, int heads, double keepHeadingProb) {
+		this.map = map;
+		this.rows = map.getNumRows();
+		this.cols = map.getNumCols();
+		this.heads = heads;
+		this.keepHeadingProb = keepHeadingProb;
+
+		int numStates = map.getNumCells() * heads;
+		successorStart = new int[numStates + 1];
+
+		int numTransitions = 0;
+		for (int i = 0; i < numStates; i++) {
+			successorStart[i] = numTransitions;
+			int cell = i / heads;
+			numTransitions += Math.max(1, Integer.bitCount(getPossibleHeadingMask(map.getRow(cell), map.getCol(cell))));
+		}
+		successorStart[numStates] = numTransitions;
+
+		successors = new int[numTransitions];
+		successorProbs = new double[numTransitions];
+		int[] predecessorCount = new int[numStates + 1];
+
+		for (int i = 0; i < numStates; i++) {
+			int head = i % heads;
+			int cell = i / heads;
+			int row = map.getRow(cell);
+			int col = map.getCol(cell);
+			int mask = getPossibleHeadingMask(row, col);
+			int numHeadings = Integer.bitCount(mask);
+			boolean canKeepHeading = (mask & (1 << head)) != 0;
+
+			int k = successorStart[i];
+			if (mask == 0) {
+				successors[k] = i;
+				successorProbs[k] = 1.0;
+				predecessorCount[i + 1]++;
+				continue;
+			}
+			for (int newHead = 0; newHead < 4; newHead++) {
+				if ((mask & (1 << newHead)) == 0)
+					continue;
+
+				double prob;
+				if (!canKeepHeading || numHeadings == 1)
+					prob = 1.0 / numHeadings;
+				else if (newHead == head)
+					prob = keepHeadingProb;
+				else
+					prob = (1.0 - keepHeadingProb) / (numHeadings - 1);
+
+				int j = getIndex(row + HEADINGS[newHead][0], col + HEADINGS[newHead][1], newHead);
+				successors[k] = j;
+				successorProbs[k] = prob;
+				predecessorCount[j + 1]++;
+				k++;
+			}
+		}
+
+		predecessorStart = predecessorCount;
+		for (int j = 0; j < numStates; j++) {
+			predecessorStart[j + 1] += predecessorStart[j];
+		}
+
+		predecessors = new int[numTransitions];
+		predecessorProbs = new double[numTransitions];
+		int[] fill = new int[numStates];
+		// states are visited in increasing order, so every predecessor list ends up sorted
+		for (int i = 0; i < numStates; i++) {
+			for (int k = successorStart[i]; k < successorStart[i + 1]; k++) {
+				int j = successors[k];
+				int slot = predecessorStart[j] + fill[j]++;
+				predecessors[slot] = i;
+				predecessorProbs[slot] = successorProbs[k];
+			}
+		}
+	}
+
+	/*
+	 * a model from already built transition arrays, see ModelCache
+	 */
+	TransitionModel(GridMap map, int heads, double keepHeadingProb, int[] successorStart, int[] successors,
+			double[] successorProbs, int[] predecessorStart, int[] predecessors, double[] predecessorProbs) {
+		this.map = map;
+		this.rows = map.getNumRows();
+		this.cols = map.getNumCols();
+		this.heads = heads;
+		this.keepHeadingProb = keepHeadingProb;
+		this.successorStart = successorStart;
+		this.successors = successors;
+		this.successorProbs = successorProbs;
+		this.predecessorStart = predecessorStart;
+		this.predecessors = predecessors;
+		this.predecessorProbs = predecessorProbs;
+	}
+
+	// bit h is set if the robot can move one step in heading h without hitting a wall or obstacle
+	private int getPossibleHeadingMask(int row, int col) {
+		int mask = 0;
+		for (int head = 0; head < 4; head++) {
+			if (map.isFree(row + HEADINGS[head][0], col + HEADINGS[head][1]))
+				mask |= 1 << head;
+		}
+		return mask;
+	}
+
+	/*
+	 * the index of the state <row, col, head>; (row, col) has to be a free cell
+	 */
+	public int getIndex(int row, int col, int head) {
+		return map.getCell(row, col) * heads + head;
+	}
+
+	public GridMap getGridMap() {
+		return map;
+	}
+
+	public int getNumRows() {
+		return rows;
+	}
+
+	public int getNumCols() {
+		return cols;
+	}
+
+	public int getNumHead() {
+		return heads;
+	}
+
+	public int getNumStates() {
+		return successorStart.length - 1;
+	}
+
+	public double getKeepHeadingProb() {
+		return keepHeadingProb;
+	}
+
+	/*
+	 * returns T(i, j), the probability to go from state i to state j
+	 */
+	public double getProb(int i, int j) {
+		for (int k = successorStart[i]; k < successorStart[i + 1]; k++) {
+			if (successors[k] == j)
+				return successorProbs[k];
+		}
+		return 0.0;
+	}
+
+	/*
+	 * returns the probability to go from pose (row, col, head) to pose (nextRow, nextCol,
+	 * nextHead), 0 for poses off the map or in an obstacle. Only a step in the new
+	 * heading or, for a walled in cell, staying put can have a probability, so every
+	 * other pair is answered without a lookup.
+	 */
+	public double getProb(int row, int col, int head, int nextRow, int nextCol, int nextHead) {
+		if (head < 0 || head >= heads || nextHead < 0 || nextHead >= heads)
+			return 0.0;
+
+		int dRow = nextRow - row;
+		int dCol = nextCol - col;
+		boolean move = HEADINGS[nextHead][0] == dRow && HEADINGS[nextHead][1] == dCol;
+		boolean stay = dRow == 0 && dCol == 0 && nextHead == head;
+		if (!move && !stay)
+			return 0.0;
+		if (!map.isFree(row, col) || !map.isFree(nextRow, nextCol))
+			return 0.0;
+
+		return getProb(getIndex(row, col, head), getIndex(nextRow, nextCol, nextHead));
+	}
+
+	/*
+	 * computes out = T^T * in, i.e. the one step prediction of the distribution in
+	 */
+	public void predict(double[] in, double[] out) {
+		for (int j = 0; j < out.length; j++) {
+			double sum = 0.0;
+			for (int k = predecessorStart[j]; k < predecessorStart[j + 1]; k++) {
+				sum += predecessorProbs[k] * in[predecessors[k]];
+			}
+			out[j] = sum;
+		}
+	}
+
+	public int[] getSuccessorStart() {
+		return successorStart;
+	}
+
+	public int[] getSuccessors() {
+		return successors;
+	}
+
+	public double[] getSuccessorProbs() {
+		return successorProbs;
+	}
+
+	public int[] getPredecessorStart() {
+		return predecessorStart;
+	}
+
+	public int[] getPredecessors() {
+		return predecessors;
+	}
+
+	public double[] getPredecessorProbs() {
+		return predecessorProbs;
+	}
+
+}
@@ -0,0 +1,170 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Viterbi decoding of the most likely sequence of states for the readings seen so far,
+ * with the robot starting from the uniform distribution like the filter.
+ *
+ * A step costs O(S) over the predecessor lists of the TransitionModel. All predecessors
+ * of a state <row, col, head> lie in the one cell the robot came from, so a backpointer
+ * only has to tell the previous heading: 2 bits, 32 per long. The backpointers of a
+ * step are kept in their own long[] of S / 32 entries, i.e. S / 4 bytes per step.
+ */
+public class ViterbiDecoder {
+
+	private static final int BITS = 2;
+	private static final int CODES_PER_LONG = 64 / BITS;
+
+	private final TransitionModel transitionModel;
+	private final SensorModel sensorModel;
+	private final GridMap map;
+	private final int heads;
+
+	private double[] delta;
+	private double[] nextDelta;
+	private final ArrayList<long[]> backpointers;
+
+	public ViterbiDecoder(TransitionModel transitionModel, SensorModel sensorModel) {
+		if (transitionModel.getNumHead() > 1 << BITS)
+			throw new IllegalArgumentException("At most " + (1 << BITS) + " headings supported");
+
+		this.transitionModel = transitionModel;
+		this.sensorModel = sensorModel;
+		this.map = transitionModel.getGridMap();
+		this.heads = transitionModel.getNumHead();
+
+		delta = new double[transitionModel.getNumStates()];
+		nextDelta = new double[transitionModel.getNumStates()];
+		backpointers = new ArrayList<long[]>();
+		reset();
+	}
+
+	public void reset() {
+		fillUniform(delta);
+		backpointers.clear();
+	}
+
+	private static void fillUniform(double[] vector) {
+		double uniformProb = 1.0 / vector.length;
+		for (int i = 0; i < vector.length; i++) {
+			vector[i] = uniformProb;
+		}
+	}
+
+	/*
+	 * extends all best paths by the reading with the given SensorModel index.
+	 *
+	 * If no path can explain the reading, the paths restart from the uniform
+	 * distribution like ForwardFilter.step() does, so one corrupt reading does not leave
+	 * every delta at 0 for good. A reading that no free cell can produce at all leaves
+	 * delta uniform.
+	 */
+	public void step(int reading) {
+		long[] pointers = new long[(delta.length + CODES_PER_LONG - 1) / CODES_PER_LONG];
+		double maxProb = extend(reading, pointers);
+		if (maxProb == 0.0) {
+			fillUniform(delta);
+			Arrays.fill(pointers, 0L);
+			maxProb = extend(reading, pointers);
+		}
+
+		// scaled by the largest value so long sequences do not underflow
+		if (maxProb > 0.0) {
+			double normalizer = 1.0 / maxProb;
+			for (int i = 0; i < nextDelta.length; i++) {
+				nextDelta[i] *= normalizer;
+			}
+		} else {
+			fillUniform(nextDelta);
+		}
+
+		backpointers.add(pointers);
+		double[] tmp = delta;
+		delta = nextDelta;
+		nextDelta = tmp;
+	}
+
+	// fills nextDelta and the backpointers of one step, returns the largest nextDelta
+	private double extend(int reading, long[] pointers) {
+		int[] predecessorStart = transitionModel.getPredecessorStart();
+		int[] predecessors = transitionModel.getPredecessors();
+		double[] predecessorProbs = transitionModel.getPredecessorProbs();
+
+		double maxProb = 0.0;
+		int j = 0;
+		for (int cell = 0; cell < map.getNumCells(); cell++) {
+			double observationProb = sensorModel.getProb(reading, map.getRow(cell), map.getCol(cell));
+			for (int head = 0; head < heads; head++, j++) {
+				double bestProb = 0.0;
+				int bestHead = 0;
+				if (observationProb != 0.0) {
+					for (int k = predecessorStart[j]; k < predecessorStart[j + 1]; k++) {
+						double prob = predecessorProbs[k] * delta[predecessors[k]];
+						if (prob > bestProb) {
+							bestProb = prob;
+							bestHead = predecessors[k] % heads;
+						}
+					}
+					bestProb *= observationProb;
+				}
+				nextDelta[j] = bestProb;
+				pointers[j / CODES_PER_LONG] |= (long) bestHead << (BITS * (j % CODES_PER_LONG));
+				if (bestProb > maxProb)
+					maxProb = bestProb;
+			}
+		}
+
+		return maxProb;
+	}
+
+	public int getNumSteps() {
+		return backpointers.size();
+	}
+
+	/*
+	 * the end state of the most likely path
+	 */
+	public int getMostLikelyState() {
+		int best = 0;
+		for (int i = 1; i < delta.length; i++) {
+			if (delta[i] > delta[best])
+				best = i;
+		}
+		return best;
+	}
+
+	/*
+	 * the TransitionModel states of the most likely path, one per step
+	 */
+	public int[] getTrajectory() {
+		int[] trajectory = new int[backpointers.size()];
+		if (trajectory.length == 0)
+			return trajectory;
+
+		int state = getMostLikelyState();
+		for (int t = trajectory.length - 1; t >= 0; t--) {
+			trajectory[t] = state;
+			if (t > 0)
+				state = getPredecessor(t, state);
+		}
+		return trajectory;
+	}
+
+	// the state before the given state of step t on its best path
+	private int getPredecessor(int t, int state) {
+		long[] pointers = backpointers.get(t);
+		int previousHead = (int) (pointers[state / CODES_PER_LONG] >>> (BITS * (state % CODES_PER_LONG))) & ((1 << BITS) - 1);
+
+		int head = state % heads;
+		int cell = state / heads;
+		int row = map.getRow(cell) - TransitionModel.HEADINGS[head][0];
+		int col = map.getCol(cell) - TransitionModel.HEADINGS[head][1];
+		// a walled in cell has only itself as predecessor
+		if (!map.isFree(row, col))
+			return state;
+		return transitionModel.getIndex(row, col, previousHead);
+	}
+
+}
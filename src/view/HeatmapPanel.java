@@ -0,0 +1,57 @@
+package view;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+
+/*
+ * Position probabilities as an image with one pixel per grid cell, scaled up to the
+ * panel, for grids that are too large for a text field per cell. Only pixels whose
+ * colour changed are written.
+ */
+public class HeatmapPanel extends JPanel {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int rows, cols;
+	private final BufferedImage image;
+
+	public HeatmapPanel( int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		image = new BufferedImage( cols, rows, BufferedImage.TYPE_INT_RGB);
+
+		int cellSize = Math.max( 1, 800 / Math.max( rows, cols));
+		setPreferredSize( new Dimension( cols * cellSize, rows * cellSize));
+		setBackground( Color.white);
+	}
+
+	/*
+	 * rgb as returned by Color.getRGB() or getColor()
+	 */
+	public void setCell( int x, int y, int rgb) {
+		if( image.getRGB( y, x) != rgb)
+			image.setRGB( y, x, rgb);
+	}
+
+	/*
+	 * white for 0 up to red for the largest probability on the grid, on a square root
+	 * scale so that small probabilities stay visible
+	 */
+	public static int getColor( double prob, double maxProb) {
+		if( prob <= 0.0 || maxProb <= 0.0)
+			return Color.white.getRGB();
+		int level = (int) Math.round( 255 * Math.sqrt( Math.min( 1.0, prob / maxProb)));
+		return 0xffff0000 | (255 - level) << 8 | (255 - level);
+	}
+
+	@Override
+	protected void paintComponent( Graphics g) {
+		super.paintComponent( g);
+		g.drawImage( image, 0, 0, getWidth(), getHeight(), 0, 0, cols, rows, null);
+	}
+
+}
@@ -8,20 +8,48 @@ import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
+import javax.swing.Timer;
 import javax.swing.border.LineBorder;
 
 import control.*;
+import model.BeliefSnapshot;
+import model.SnapshotSource;
 
-
+/*
+ * The estimator is stepped by the LocalizationDriver thread (or the "One step" button)
+ * and the viewer samples it FRAME_RATE times a second on the event dispatch thread.
+ * Estimators that are a SnapshotSource are read lock free from their latest snapshot,
+ * others under the viewer's lock, which also serializes their steps. Only fields whose
+ * text or colour changed since the last frame are touched. Grids with more than
+ * MAX_TEXT_CELLS cells are drawn as a HeatmapPanel instead of text fields.
+ */
 public class RobotLocalizationViewer {
 	
+	public static final int FRAME_RATE = 25;
+	public static final int MAX_TEXT_CELLS = 400;
+	
 	private JFrame viewer;
 	private JTextField[][][] states;
 	private JPanel[][] positions;
+	private HeatmapPanel heatmap;
 	private int rows, cols, head;
 	private EstimatorInterface loc;
+	private SnapshotSource snapshots;
 	private int sXCount, sYCount, tXCount, tYCount, tHCount;
-	private boolean runFlag, initFlag;
+	private boolean runFlag;
+	// read by render() without the lock on the snapshot path
+	private volatile boolean initFlag;
+	
+	// steps made through the viewer and the step (or snapshot version) shown last
+	private long numSteps;
+	private long renderedVersion;
+	
+	// what the fields show right now, null where unknown
+	private double[][] posProb;
+	private boolean[][] occupied;
+	private String[][] shownText;
+	private double[][] shownProb;
+	private Color[][][] shownColor;
 	
 	public RobotLocalizationViewer( EstimatorInterface l) {
 		loc = l;
@@ -34,6 +62,17 @@ public class RobotLocalizationViewer {
 		sXCount = sYCount = -1;
 		tXCount = tYCount = tHCount = 0;
 		
+		if( loc instanceof SnapshotSource) {
+			snapshots = (SnapshotSource) loc;
+			snapshots.setSnapshotPublishing( true);
+		}
+		renderedVersion = -1;
+		posProb = new double[rows][cols];
+		occupied = new boolean[rows][cols];
+		shownText = new String[rows][cols];
+		shownProb = new double[rows][cols];
+		shownColor = new Color[rows][cols][5];
+		
 		viewer = new JFrame( "RobotLocalizer");	
 		viewer.setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE);
 		viewer.setResizable( true);
@@ -42,32 +81,38 @@ public class RobotLocalizationViewer {
 		Dimension dPos = new Dimension( 120, 120);
 		fieldPanel.setLayout(new GridLayout( rows, cols));
 		
-		positions = new JPanel[rows][cols];
-		states = new JTextField[rows][cols][5];
-		
-		for( int i=0; i<rows; i++) {
-			for( int j=0; j<cols; j++) {
-				positions[i][j] = new JPanel();
-				positions[i][j].setPreferredSize( dPos);
-				positions[i][j].setLayout( new BorderLayout());
+		if( rows * cols > MAX_TEXT_CELLS) {
+			heatmap = new HeatmapPanel( rows, cols);
+			fieldPanel.setLayout( new BorderLayout());
+			fieldPanel.add( heatmap, BorderLayout.CENTER);
+		} else {
+			positions = new JPanel[rows][cols];
+			states = new JTextField[rows][cols][5];
+			
+			for( int i=0; i<rows; i++) {
+				for( int j=0; j<cols; j++) {
+					positions[i][j] = new JPanel();
+					positions[i][j].setPreferredSize( dPos);
+					positions[i][j].setLayout( new BorderLayout());
 				
-				for( int h=0; h<5; h++) {
-					states[i][j][h] = new JTextField();
-					states[i][j][h].setPreferredSize( dState);
-					states[i][j][h].setLayout(null);
-					states[i][j][h].setBackground( Color.white);
-					states[i][j][h].setText( "");
-					states[i][j][h].setHorizontalAlignment( JTextField.CENTER);
-					states[i][j][h].setBorder(javax.swing.BorderFactory.createEmptyBorder());
-				}
-				positions[i][j].setBorder( new LineBorder( Color.black));
-				positions[i][j].add( states[i][j][0], BorderLayout.NORTH);
-				positions[i][j].add( states[i][j][1], BorderLayout.EAST);
-				positions[i][j].add( states[i][j][2], BorderLayout.SOUTH);
-				positions[i][j].add( states[i][j][3], BorderLayout.WEST);
-				positions[i][j].add( states[i][j][4], BorderLayout.CENTER);
-				fieldPanel.add( positions[i][j]);
+					for( int h=0; h<5; h++) {
+						states[i][j][h] = new JTextField();
+						states[i][j][h].setPreferredSize( dState);
+						states[i][j][h].setLayout(null);
+						states[i][j][h].setBackground( Color.white);
+						states[i][j][h].setText( "");
+						states[i][j][h].setHorizontalAlignment( JTextField.CENTER);
+						states[i][j][h].setBorder(javax.swing.BorderFactory.createEmptyBorder());
+					}
+					positions[i][j].setBorder( new LineBorder( Color.black));
+					positions[i][j].add( states[i][j][0], BorderLayout.NORTH);
+					positions[i][j].add( states[i][j][1], BorderLayout.EAST);
+					positions[i][j].add( states[i][j][2], BorderLayout.SOUTH);
+					positions[i][j].add( states[i][j][3], BorderLayout.WEST);
+					positions[i][j].add( states[i][j][4], BorderLayout.CENTER);
+					fieldPanel.add( positions[i][j]);
 				
+				}
 			}
 		}
 		
@@ -130,11 +175,18 @@ public class RobotLocalizationViewer {
 		
 		viewer.add( fieldPanel, BorderLayout.CENTER);
 		viewer.add( buttonPanel, BorderLayout.SOUTH);
-		viewer.add( modelButtonPanel, BorderLayout.WEST);
+		// the model views need a text field per state
+		if( heatmap == null)
+			viewer.add( modelButtonPanel, BorderLayout.WEST);
 		
 		viewer.pack();
 		viewer.setVisible( true);
 		
+		new Timer( 1000 / FRAME_RATE, new ActionListener() {
+			public void actionPerformed( ActionEvent e) {
+				render();
+			}
+		}).start();
 	}
 	
 
@@ -143,24 +195,18 @@ public class RobotLocalizationViewer {
 		notifyAll();
 	}
 	
-	public synchronized void initLocViewer( ){		
-
-		int[] start = loc.getCurrentTrueState();
-		
-		updateViewer( start[0], start[1], start[2], -1, -1);
+	public void initLocViewer( ){		
 		initFlag = true;
+		render();
 	}
 
+	/*
+	 * steps the estimator, the next frame shows the result
+	 */
 	public synchronized void updateOneStep( ){		
 		if( initFlag) {
 			loc.update();
-			int[] tXY = loc.getCurrentTrueState();
-			int[] sXY = loc.getCurrentReading();
-			if( sXY != null)
-				updateViewer(  tXY[0], tXY[1], tXY[2], sXY[0], sXY[1]);	
-			else
-				updateViewer(  tXY[0], tXY[1], tXY[2], -1, -1);	
-					
+			numSteps++;
 		}
 	}
 	
@@ -170,75 +216,168 @@ public class RobotLocalizationViewer {
 		updateOneStep();
 	}
 
+	/*
+	 * shows the latest state of the estimator, if it changed since the last frame
+	 */
+	private void render() {
+		int tX, tY, tH, sX, sY;
+		
+		if( snapshots != null) {
+			BeliefSnapshot snapshot = snapshots.getSnapshot();
+			if( !initFlag || snapshot == null || snapshot.version == renderedVersion)
+				return;
+			renderedVersion = snapshot.version;
+			
+			for( int x=0; x<rows; x++) {
+				for( int y=0; y<cols; y++) {
+					posProb[x][y] = snapshot.getProb( x, y);
+					occupied[x][y] = !snapshot.getGridMap().isFree( x, y);
+				}
+			}
+			tX = snapshot.trueRow;
+			tY = snapshot.trueCol;
+			tH = snapshot.trueHeading;
+			sX = snapshot.readingRow;
+			sY = snapshot.readingCol;
+		} else {
+			synchronized( this) {
+				if( !initFlag || numSteps == renderedVersion)
+					return;
+				renderedVersion = numSteps;
+				
+				for( int x=0; x<rows; x++) {
+					for( int y=0; y<cols; y++) {
+						posProb[x][y] = loc.getCurrentProb( x, y);
+					}
+				}
+				int[] tXY = loc.getCurrentTrueState();
+				int[] sXY = loc.getCurrentReading();
+				tX = tXY[0];
+				tY = tXY[1];
+				tH = tXY[2];
+				sX = sXY != null ? sXY[0] : -1;
+				sY = sXY != null ? sXY[1] : -1;
+			}
+		}
+		
+		if( heatmap != null)
+			updateHeatmap( tX, tY, sX, sY);
+		else
+			updateViewer( tX, tY, tH, sX, sY);
+	}
 	
-	public void updateViewer( int tX, int tY, int tH, int sX, int sY) {
+	private void updateViewer( int tX, int tY, int tH, int sX, int sY) {
 		int x, y, h;
 		double posProbMax;
-		double[][] posProb = new double[rows][cols];
 		
 		posProbMax = 0.0;
 		for( x=0; x<rows; x++) {
 			for( y=0; y<cols; y++) {
-
-				posProb[x][y] = 0.0;
-				posProb[x][y] = loc.getCurrentProb( x, y);
-				states[x][y][0].setText( String.format("%.4f", posProb[x][y]));				
-
-				for( h=1; h<5; h++) {
-					states[x][y][h].setText( "");				
+				if( posProb[x][y] > posProbMax) {
+					posProbMax = posProb[x][y];
 				}
-
-				if( posProb[x][y] == 0.0) {
-					for( h=0; h<5; h++) {
-						states[x][y][h].setBackground(Color.white);
-					}
+			}
+		}
+		
+		for( x=0; x<rows; x++) {
+			for( y=0; y<cols; y++) {
+				Color color;
+				if( occupied[x][y]) {
+					color = Color.darkGray;
+				} else if( posProb[x][y] == 0.0) {
+					color = Color.white;
 				} else if( posProb[x][y] <= 0.1) {
-					for( h=0; h<5; h++) {
-						states[x][y][h].setBackground(Color.yellow);
-					}
-					
+					color = Color.yellow;
 				} else if( posProb[x][y] <= 0.3) {
-					for( h=0; h<5; h++) {
-						states[x][y][h].setBackground(Color.orange);
-					}
+					color = Color.orange;
 				} else {
-					for( h=0; h<5; h++) {
-						states[x][y][h].setBackground(Color.red);
+					color = Color.red;
+				}
+				boolean isMax = posProbMax != 0.0 && posProb[x][y] == posProbMax;
+				
+				for( h=0; h<5; h++) {
+					Color fieldColor = color;
+					if( isMax && h < 4)
+						fieldColor = Color.lightGray;
+					if( x == tX && y == tY && h == tH)
+						fieldColor = Color.black;
+					if( x == sX && y == sY && h == 4)
+						fieldColor = Color.cyan;
+					
+					if( fieldColor != shownColor[x][y][h]) {
+						states[x][y][h].setBackground( fieldColor);
+						shownColor[x][y][h] = fieldColor;
+					}
+				}
+				
+				// formatting is the expensive part, so only done for changed values
+				if( shownText[x][y] == null || posProb[x][y] != shownProb[x][y]) {
+					String text = occupied[x][y] ? "" : String.format( "%.4f", posProb[x][y]);
+					shownProb[x][y] = posProb[x][y];
+					if( !text.equals( shownText[x][y])) {
+						states[x][y][0].setText( text);
+						if( shownText[x][y] == null) {
+							for( h=1; h<5; h++) {
+								states[x][y][h].setText( "");
+							}
+						}
+						shownText[x][y] = text;
 					}
 				}
+			}
+		}
+	}
+	
+	private void updateHeatmap( int tX, int tY, int sX, int sY) {
+		double posProbMax = 0.0;
+		int maxX = -1, maxY = -1;
+		for( int x=0; x<rows; x++) {
+			for( int y=0; y<cols; y++) {
 				if( posProb[x][y] > posProbMax) {
 					posProbMax = posProb[x][y];
+					maxX = x;
+					maxY = y;
 				}
-	
 			}
 		}
-		if( posProbMax != 0.0) {
-			for( x=0; x<rows; x++) {
-				for( y=0; y<cols; y++) {
-					if( posProb[x][y] == posProbMax){
-				
-						states[x][y][0].setBackground(Color.lightGray);
-						states[x][y][1].setBackground(Color.lightGray);
-						states[x][y][2].setBackground(Color.lightGray);
-						states[x][y][3].setBackground(Color.lightGray);
-					}
+		
+		for( int x=0; x<rows; x++) {
+			for( int y=0; y<cols; y++) {
+				int rgb;
+				if( x == tX && y == tY)
+					rgb = Color.black.getRGB();
+				else if( x == sX && y == sY)
+					rgb = Color.cyan.getRGB();
+				else if( x == maxX && y == maxY)
+					rgb = Color.blue.getRGB();
+				else if( occupied[x][y])
+					rgb = Color.darkGray.getRGB();
+				else
+					rgb = HeatmapPanel.getColor( posProb[x][y], posProbMax);
+				heatmap.setCell( x, y, rgb);
+			}
+		}
+		heatmap.repaint();
+	}
+	
+	// the model views write to the fields behind the back of updateViewer()
+	private void forgetShownFields() {
+		for( int x=0; x<rows; x++) {
+			for( int y=0; y<cols; y++) {
+				shownText[x][y] = null;
+				for( int h=0; h<5; h++) {
+					shownColor[x][y][h] = null;
 				}
 			}
 		}
-			
-		states[tX][tY][tH].setBackground(Color.black);
-		if( sX != -1)
-			states[sX][sY][4].setBackground(Color.cyan);
-		
-
-		viewer.repaint();
-		
 	}
 
 	public void updateTransitionView() {
 
 		int x, y, h;
 		
+		forgetShownFields();
+		
 		for( x=0; x<rows; x++) {
 			for( y=0; y<cols; y++) {
 				for( h=0; h<head; h++) {
@@ -271,6 +410,8 @@ public class RobotLocalizationViewer {
 	public void updateSensorView() {
 		int x, y, h;
 		String s = "";
+		
+		forgetShownFields();
 
 		System.out.println("sXCount = " + sXCount + ", sYCount = " + sYCount);
 		if( sYCount == cols) {